@@ -0,0 +1,164 @@
+package com.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.v2.ApacheHttpTransport;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * The outbound HTTP layer shared by the Gemini, ElevenLabs and YouTube clients: pooled keep-alive
+ * connections with per-host limits and connect/read timeouts, with pool usage published as metrics.
+ */
+@Configuration
+public class HttpClientConfig {
+
+    @Value("${http.client.max-total:100}")
+    private int maxTotal;
+
+    @Value("${http.client.max-per-route:20}")
+    private int maxPerRoute;
+
+    // Comma-separated host:limit overrides of max-per-route
+    @Value("${http.client.route-limits:}")
+    private String routeLimits;
+
+    @Value("${http.client.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+
+    // Gemini can take minutes to generate a long answer
+    @Value("${http.client.response-timeout-ms:180000}")
+    private long responseTimeoutMs;
+
+    // How long a request may wait for a pooled connection
+    @Value("${http.client.connection-request-timeout-ms:10000}")
+    private long connectionRequestTimeoutMs;
+
+    @Value("${http.client.idle-timeout-seconds:30}")
+    private long idleTimeoutSeconds;
+
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager outboundConnectionManager() {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxTotal)
+                .setMaxConnPerRoute(maxPerRoute)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                        .setSocketTimeout(Timeout.ofMilliseconds(responseTimeoutMs))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                .build();
+        parseRouteLimits().forEach((host, limit) ->
+                connectionManager.setMaxPerRoute(new HttpRoute(new HttpHost("https", host, 443)), limit));
+        return connectionManager;
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient outboundHttpClient(PoolingHttpClientConnectionManager outboundConnectionManager) {
+        return HttpClients.custom()
+                .setConnectionManager(outboundConnectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectionRequestTimeoutMs))
+                        .setResponseTimeout(Timeout.ofMilliseconds(responseTimeoutMs))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(idleTimeoutSeconds))
+                .build();
+    }
+
+    /**
+     * The YouTube Data API client needs a google-http-client transport, which only wraps HttpClient 4.x,
+     * so it gets its own pool built from the same settings.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public org.apache.http.impl.conn.PoolingHttpClientConnectionManager youtubeConnectionManager() {
+        org.apache.http.impl.conn.PoolingHttpClientConnectionManager connectionManager =
+                new org.apache.http.impl.conn.PoolingHttpClientConnectionManager(idleTimeoutSeconds * 2, TimeUnit.SECONDS);
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        connectionManager.setValidateAfterInactivity(2000);
+        parseRouteLimits().forEach((host, limit) -> connectionManager.setMaxPerRoute(
+                new org.apache.http.conn.routing.HttpRoute(new org.apache.http.HttpHost(host, 443, "https")), limit));
+        return connectionManager;
+    }
+
+    @Bean
+    public HttpTransport youtubeHttpTransport(org.apache.http.impl.conn.PoolingHttpClientConnectionManager youtubeConnectionManager) {
+        org.apache.http.client.config.RequestConfig requestConfig = org.apache.http.client.config.RequestConfig.custom()
+                .setConnectTimeout((int) connectTimeoutMs)
+                .setSocketTimeout((int) responseTimeoutMs)
+                .setConnectionRequestTimeout((int) connectionRequestTimeoutMs)
+                .build();
+        return new ApacheHttpTransport(org.apache.http.impl.client.HttpClients.custom()
+                .setConnectionManager(youtubeConnectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeoutSeconds, TimeUnit.SECONDS)
+                .useSystemProperties()
+                .build());
+    }
+
+    /**
+     * Publishes leased/available/pending/max connection counts of both pools.
+     */
+    @Bean
+    public MeterBinder httpClientPoolMetrics(PoolingHttpClientConnectionManager outboundConnectionManager,
+                                             org.apache.http.impl.conn.PoolingHttpClientConnectionManager youtubeConnectionManager) {
+        return registry -> {
+            registerPoolGauges(registry, "outbound", () -> toStats(outboundConnectionManager.getTotalStats()));
+            registerPoolGauges(registry, "youtube", () -> {
+                org.apache.http.pool.PoolStats stats = youtubeConnectionManager.getTotalStats();
+                return new int[] {stats.getLeased(), stats.getAvailable(), stats.getPending(), stats.getMax()};
+            });
+        };
+    }
+
+    private static int[] toStats(PoolStats stats) {
+        return new int[] {stats.getLeased(), stats.getAvailable(), stats.getPending(), stats.getMax()};
+    }
+
+    private static void registerPoolGauges(MeterRegistry registry, String pool, java.util.function.Supplier<int[]> stats) {
+        String[] names = {"leased", "available", "pending", "max"};
+        for (int i = 0; i < names.length; i++) {
+            final int index = i;
+            Gauge.builder("http.client.pool." + names[i], () -> stats.get()[index])
+                    .tag("pool", pool)
+                    .description("HTTP client connection pool " + names[i] + " connections")
+                    .register(registry);
+        }
+    }
+
+    private Map<String, Integer> parseRouteLimits() {
+        Map<String, Integer> limits = new LinkedHashMap<>();
+        if (routeLimits == null || routeLimits.isBlank()) {
+            return limits;
+        }
+        for (String entry : routeLimits.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length == 2) {
+                limits.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+            }
+        }
+        return limits;
+    }
+}
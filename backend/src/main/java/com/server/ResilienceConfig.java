@@ -0,0 +1,47 @@
+package com.server;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import com.server.service.UpstreamGuard;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * One {@link UpstreamGuard} per external API, configured under upstream.&lt;name&gt;.* so the limits can be
+ * matched to each provider's quota.
+ */
+@Configuration
+public class ResilienceConfig {
+
+    @Bean
+    public UpstreamGuard geminiGuard(Environment env, MeterRegistry meterRegistry) {
+        return new UpstreamGuard("gemini", settings(env, "gemini", 8, 10, 20), meterRegistry);
+    }
+
+    @Bean
+    public UpstreamGuard elevenLabsGuard(Environment env, MeterRegistry meterRegistry) {
+        // ElevenLabs plans cap concurrent requests far below Gemini's
+        return new UpstreamGuard("elevenlabs", settings(env, "elevenlabs", 4, 5, 5), meterRegistry);
+    }
+
+    @Bean
+    public UpstreamGuard youtubeGuard(Environment env, MeterRegistry meterRegistry) {
+        return new UpstreamGuard("youtube", settings(env, "youtube", 4, 5, 10), meterRegistry);
+    }
+
+    private static UpstreamGuard.Settings settings(Environment env, String name, int maxConcurrent, double ratePerSecond, int burst) {
+        String prefix = "upstream." + name + ".";
+        return new UpstreamGuard.Settings(
+                env.getProperty(prefix + "max-concurrent", Integer.class, maxConcurrent),
+                env.getProperty(prefix + "rate-per-second", Double.class, ratePerSecond),
+                env.getProperty(prefix + "burst", Integer.class, burst),
+                env.getProperty(prefix + "max-wait-ms", Long.class, 30000L),
+                env.getProperty(prefix + "max-attempts", Integer.class, 4),
+                env.getProperty(prefix + "base-backoff-ms", Long.class, 500L),
+                env.getProperty(prefix + "max-backoff-ms", Long.class, 20000L),
+                env.getProperty(prefix + "circuit.failure-threshold", Integer.class, 5),
+                env.getProperty(prefix + "circuit.open-ms", Long.class, 30000L));
+    }
+}
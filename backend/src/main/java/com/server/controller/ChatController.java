@@ -1,25 +1,45 @@
 package com.server.controller;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import com.server.model.ChatMessage;
+import com.server.service.CacheMode;
+import com.server.service.ChatHistory;
+import com.server.service.ChatPromptBuilder;
 import com.server.service.GeminiService;
 import com.server.service.SessionService;
 import com.server.service.VectorStoreService;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
 @RestController
 @RequestMapping("/api/pdf")
 @CrossOrigin(origins = "http://localhost:8081")
@@ -28,18 +48,58 @@ public class ChatController {
     private final GeminiService geminiService;
     private final VectorStoreService vectorStoreService;
     private final SessionService sessionService;
+    private final ChatPromptBuilder chatPromptBuilder;
     private final Map<String, String> sessionPdfTexts = new ConcurrentHashMap<>();
-    private final Map<String, List<Map<String, String>>> sessionChatHistories = new ConcurrentHashMap<>();
+    private final Map<String, ChatHistory> sessionChatHistories = new ConcurrentHashMap<>();
+    private final Timer firstTokenTimer;
+    private final Timer streamTimer;
+
+    // Each open stream holds a thread while Gemini generates
+    @Value("${chat.stream.threads:16}")
+    private int streamThreads;
+
+    @Value("${chat.stream.timeout-ms:180000}")
+    private long streamTimeoutMs;
+
+    private ExecutorService streamExecutor;
 
     @Autowired
-    public ChatController(GeminiService geminiService, VectorStoreService vectorStoreService, SessionService sessionService) {
+    public ChatController(GeminiService geminiService, VectorStoreService vectorStoreService, SessionService sessionService,
+                          ChatPromptBuilder chatPromptBuilder, MeterRegistry meterRegistry) {
         this.geminiService = geminiService;
         this.vectorStoreService = vectorStoreService;
         this.sessionService = sessionService;
+        this.chatPromptBuilder = chatPromptBuilder;
+        this.firstTokenTimer = Timer.builder("chat.stream.first-token")
+                .description("Time from a streaming chat request to its first generated text")
+                .register(meterRegistry);
+        this.streamTimer = Timer.builder("chat.stream.duration")
+                .description("Time to stream a complete chat answer")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void initStreamExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        // No queue: once every thread holds a stream, further streams are turned away with a 503
+        streamExecutor = new ThreadPoolExecutor(streamThreads, streamThreads, 0L, TimeUnit.MILLISECONDS, new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "chat-stream-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    void shutdownStreamExecutor() {
+        if (streamExecutor != null) {
+            streamExecutor.shutdownNow();
+        }
     }
 
     @PostMapping("/chat/{sessionId}")
-    public ResponseEntity<?> chatWithPdf(@PathVariable String sessionId, @RequestBody ChatMessage chatMessage) {
+    public ResponseEntity<?> chatWithPdf(@PathVariable String sessionId, @RequestBody ChatMessage chatMessage,
+                                        @RequestParam(value = "cache", defaultValue = "use") String cache) {
         String userQuestion = chatMessage.getContent();
         if (userQuestion == null || userQuestion.trim().isEmpty()) {
             return ResponseEntity.badRequest().body("User question cannot be empty.");
@@ -50,19 +110,92 @@ public class ChatController {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No PDF text found for the given session ID. Please upload a PDF first.");
         }
 
-        List<Map<String, String>> history = sessionChatHistories.computeIfAbsent(sessionId, k -> new ArrayList<>());
+        ChatHistory history = sessionChatHistories.computeIfAbsent(sessionId, k -> new ChatHistory());
 
-        List<String> retrievedChunks = vectorStoreService.queryVectorStore(userQuestion, 3);
-        String context = String.join("\n", retrievedChunks);
+        List<String> retrievedChunks = vectorStoreService.queryVectorStore(sessionId, userQuestion, 3);
+        ChatPromptBuilder.ChatPrompt chatPrompt = chatPromptBuilder.build(userQuestion, retrievedChunks, history);
 
-        String answer = geminiService.queryPdfChat(userQuestion, context, history);
+        String answer = geminiService.queryPdfChat(chatPrompt.prompt(), CacheMode.fromParam(cache));
         if (answer.startsWith("Error:")) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(answer);
         }
 
-        history.add(Map.of("role", "user", "content", userQuestion));
-        history.add(Map.of("role", "assistant", "content", answer));
+        chatPromptBuilder.recordExchange(history, userQuestion, answer);
+
+        return ResponseEntity.ok(toResponse(answer, chatPrompt.usage()));
+    }
+
+    /**
+     * Streams the answer as server-sent events: "token" events carry text as Gemini generates it,
+     * then a single "done" event carries the full message (or an "error" event the failure).
+     * The exchange is added to the session history once the answer is complete.
+     */
+    @PostMapping(value = "/chat/{sessionId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<?> streamChatWithPdf(@PathVariable String sessionId, @RequestBody ChatMessage chatMessage) {
+        String userQuestion = chatMessage.getContent();
+        if (userQuestion == null || userQuestion.trim().isEmpty()) {
+            return ResponseEntity.badRequest().body("User question cannot be empty.");
+        }
+
+        String pdfText = sessionService.getPdfText(sessionId);
+        if (pdfText == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No PDF text found for the given session ID. Please upload a PDF first.");
+        }
+
+        long startNanos = System.nanoTime();
+        ChatHistory history = sessionChatHistories.computeIfAbsent(sessionId, k -> new ChatHistory());
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        try {
+            streamExecutor.execute(() -> streamAnswer(emitter, sessionId, userQuestion, history, startNanos));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Chat is busy. Please try again shortly.");
+        }
+        return ResponseEntity.ok().contentType(MediaType.TEXT_EVENT_STREAM).body(emitter);
+    }
+
+    private void streamAnswer(SseEmitter emitter, String sessionId, String userQuestion, ChatHistory history, long startNanos) {
+        try {
+            List<String> retrievedChunks = vectorStoreService.queryVectorStore(sessionId, userQuestion, 3);
+            ChatPromptBuilder.ChatPrompt chatPrompt = chatPromptBuilder.build(userQuestion, retrievedChunks, history);
+
+            boolean[] firstToken = {true};
+            String answer = geminiService.streamPdfChat(chatPrompt.prompt(), text -> {
+                if (firstToken[0]) {
+                    firstToken[0] = false;
+                    firstTokenTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                }
+                try {
+                    emitter.send(SseEmitter.event().name("token").data(Map.of("text", text)));
+                } catch (IOException e) {
+                    // Client went away; abort the upstream read
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (answer.startsWith("Error:")) {
+                emitter.send(SseEmitter.event().name("error").data(answer));
+                emitter.complete();
+                return;
+            }
+
+            chatPromptBuilder.recordExchange(history, userQuestion, answer);
+            streamTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            emitter.send(SseEmitter.event().name("done").data(toResponse(answer, chatPrompt.usage())));
+            emitter.complete();
+        } catch (UncheckedIOException | IOException e) {
+            System.err.println("Chat stream closed by client: " + e.getMessage());
+            emitter.completeWithError(e);
+        } catch (Exception e) {
+            System.err.println("Unexpected error while streaming chat: " + e.getMessage());
+            emitter.completeWithError(e);
+        }
+    }
 
-        return ResponseEntity.ok(new ChatMessage("assistant", answer));
+    private Map<String, Object> toResponse(String answer, ChatPromptBuilder.TokenUsage usage) {
+        // Same shape as ChatMessage, plus the estimated prompt size
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("role", "assistant");
+        body.put("content", answer);
+        body.put("usage", usage.toMap());
+        return body;
     }
-} 
\ No newline at end of file
+}
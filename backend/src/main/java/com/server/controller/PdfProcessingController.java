@@ -11,8 +11,11 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.server.service.ArtifactService;
+import com.server.service.CacheMode;
 import com.server.service.GeminiService;
 import com.server.service.SessionService;
 import com.server.model.User;
@@ -27,20 +30,24 @@ import com.server.controller.AuthController;
 public class PdfProcessingController {
 
     private final GeminiService geminiService;
+    private final ArtifactService artifactService;
     private final SessionService sessionService;
     private final UserContentRepository userContentRepository;
     private final UserRepository userRepository;
 
     @Autowired
-    public PdfProcessingController(GeminiService geminiService, SessionService sessionService, UserContentRepository userContentRepository, UserRepository userRepository) {
+    public PdfProcessingController(GeminiService geminiService, ArtifactService artifactService, SessionService sessionService, UserContentRepository userContentRepository, UserRepository userRepository) {
         this.geminiService = geminiService;
+        this.artifactService = artifactService;
         this.sessionService = sessionService;
         this.userContentRepository = userContentRepository;
         this.userRepository = userRepository;
     }
 
     @GetMapping("/process/{sessionId}")
-    public ResponseEntity<?> processPdf(@PathVariable String sessionId, @RequestHeader("Authorization") String token) {
+    public ResponseEntity<?> processPdf(@PathVariable String sessionId, @RequestHeader("Authorization") String token,
+                                        @RequestParam(value = "cache", defaultValue = "use") String cache,
+                                        @RequestParam(value = "regenerate", defaultValue = "false") boolean regenerate) {
         Long userId = AuthController.getUserIdFromToken(token);
         if (userId == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid or missing token");
@@ -53,12 +60,13 @@ public class PdfProcessingController {
         if (content == null || content.getExtractedText() == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No PDF text found for the given session ID. Please upload a PDF first.");
         }
-        String geminiResponse = geminiService.processPdfWithGemini(content.getExtractedText());
+        // Served from storage unless missing, generated by an older prompt, or a regeneration is asked for
+        CacheMode cacheMode = ArtifactService.cacheModeFor(cache, regenerate);
+        String geminiResponse = artifactService.getOrGenerate(content, ArtifactService.Artifact.SUMMARY, regenerate,
+                () -> geminiService.processPdfWithGemini(content.getExtractedText(), cacheMode));
         if (geminiResponse.startsWith("Error:")) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(geminiResponse);
         }
-        content.setSummary(geminiResponse);
-        userContentRepository.save(content);
         return ResponseEntity.ok(Map.of("analysis", geminiResponse));
     }
 } 
\ No newline at end of file
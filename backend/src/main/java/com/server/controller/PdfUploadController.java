@@ -1,17 +1,16 @@
 package com.server.controller;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.List;
 import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -19,39 +18,27 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
-import com.server.service.PdfExtractionService;
-import com.server.service.SessionService;
-import com.server.service.VectorStoreService;
-import com.server.service.YouTubeService;
+import com.server.service.IngestionService;
+import com.server.service.UploadSpoolService;
+import com.server.model.IngestionJob;
 import com.server.model.User;
-import com.server.model.UserContent;
-import com.server.repository.UserContentRepository;
 import com.server.repository.UserRepository;
 import com.server.controller.AuthController;
-import com.server.service.GeminiService;
 
 @RestController
 @RequestMapping("/api/pdf")
 @CrossOrigin(origins = "http://localhost:8000")
 public class PdfUploadController {
 
-    private final PdfExtractionService pdfExtractionService;
-    private final VectorStoreService vectorStoreService;
-    private final SessionService sessionService;
-    private final UserContentRepository userContentRepository;
     private final UserRepository userRepository;
-    private final YouTubeService youTubeService;
-    private final GeminiService geminiService;
+    private final UploadSpoolService uploadSpoolService;
+    private final IngestionService ingestionService;
 
     @Autowired
-    public PdfUploadController(PdfExtractionService pdfExtractionService, VectorStoreService vectorStoreService, SessionService sessionService, UserContentRepository userContentRepository, UserRepository userRepository, YouTubeService youTubeService, GeminiService geminiService) {
-        this.pdfExtractionService = pdfExtractionService;
-        this.vectorStoreService = vectorStoreService;
-        this.sessionService = sessionService;
-        this.userContentRepository = userContentRepository;
+    public PdfUploadController(UserRepository userRepository, UploadSpoolService uploadSpoolService, IngestionService ingestionService) {
         this.userRepository = userRepository;
-        this.youTubeService = youTubeService;
-        this.geminiService = geminiService;
+        this.uploadSpoolService = uploadSpoolService;
+        this.ingestionService = ingestionService;
     }
 
     @PostMapping("/upload")
@@ -68,44 +55,42 @@ public class PdfUploadController {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("User not found");
         }
         try {
-            File tempFile = File.createTempFile("uploaded_", ".pdf");
-            try (FileOutputStream fos = new FileOutputStream(tempFile)) {
-                fos.write(file.getBytes());
-            }
-            String extractedText = pdfExtractionService.extractTextFromPdf(tempFile);
-            if (extractedText.startsWith("Error:")) {
-                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(extractedText);
-            }
-            String sessionId = UUID.randomUUID().toString();
-            vectorStoreService.buildPdfVectorStore(extractedText);
-            sessionService.addPdfText(sessionId, extractedText);
-            // Auto-generate summary, video suggestions, podcast script
-            String summary = geminiService.processPdfWithGemini(extractedText);
-            String podcastScript = geminiService.getPodcastScript(extractedText);
-            String subject = geminiService.getSubjectForYouTubeSearch(extractedText);
-            List<com.server.model.YouTubeVideo> videos = subject != null ? youTubeService.searchTopRelevantVideos(subject, 10) : null;
-            // Save to DB
-            UserContent content = new UserContent();
-            content.setUser(user);
-            content.setSessionId(sessionId);
-            content.setOriginalFileName(file.getOriginalFilename());
-            content.setExtractedText(extractedText);
-            content.setSummary(summary);
-            content.setPodcast(podcastScript);
-            content.setYoutube(videos != null ? subject + "\n" + videos.toString() : null);
-            userContentRepository.save(content);
-            tempFile.delete();
-            return ResponseEntity.ok(Map.of(
-                "sessionId", sessionId,
-                "message", "PDF uploaded and content generated successfully.",
-                "summary", summary,
-                "podcastScript", podcastScript,
-                "videoSuggestions", videos
+            // The multipart file only lives as long as this request, so spool it (hashing it on the way) before handing off
+            UploadSpoolService.SpooledUpload upload = uploadSpoolService.spool(file);
+            // Extraction, indexing and generation run in the background; the job closes the spooled file
+            IngestionJob job = ingestionService.submit(user, upload, file.getOriginalFilename());
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of(
+                "sessionId", job.getSessionId(),
+                "jobId", job.getJobId(),
+                "statusUrl", "/api/pdf/jobs/" + job.getJobId(),
+                "message", "PDF uploaded. Content is being generated."
             ));
+        } catch (UploadSpoolService.SpoolFullException e) {
+            System.err.println(e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "60")
+                    .body("The server is busy receiving other uploads. Please try again shortly.");
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "60")
+                    .body("Too many documents are queued for processing. Please try again shortly.");
         } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to upload or process PDF: " + e.getMessage());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("An unexpected error occurred: " + e.getMessage());
         }
     }
-} 
\ No newline at end of file
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<?> getJobStatus(@PathVariable String jobId, @RequestHeader("Authorization") String token) {
+        Long userId = AuthController.getUserIdFromToken(token);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid or missing token");
+        }
+        IngestionJob job = ingestionService.getJob(jobId);
+        if (job == null || !job.getUserId().equals(userId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No ingestion job found for the given id.");
+        }
+        return ResponseEntity.ok(job.toStatus());
+    }
+}
@@ -1,12 +1,25 @@
 package com.server.controller;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -15,39 +28,86 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
 import com.server.service.ElevenLabsService;
+import com.server.service.ArtifactService;
+import com.server.service.CacheMode;
 import com.server.service.GeminiService;
+import com.server.service.PodcastPipelineService;
 import com.server.service.SessionService;
+import com.server.model.PodcastJob;
 import com.server.model.User;
 import com.server.model.UserContent;
 import com.server.repository.UserContentRepository;
 import com.server.repository.UserRepository;
 import com.server.controller.AuthController;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
 @RestController
 @RequestMapping("/api/pdf")
 @CrossOrigin(origins = "http://localhost:8000")
 public class PodcastController {
 
+    private static final MediaType AUDIO_MPEG = MediaType.parseMediaType("audio/mpeg");
+
     private final GeminiService geminiService;
+    private final ArtifactService artifactService;
     private final ElevenLabsService elevenLabsService;
+    private final PodcastPipelineService podcastPipelineService;
     private final SessionService sessionService;
     private final UserContentRepository userContentRepository;
     private final UserRepository userRepository;
 
+    // Listeners streaming podcasts at once; each holds a thread while it waits for segments
+    @Value("${podcast.stream.threads:16}")
+    private int streamThreads;
+
+    // Longest a whole stream may run, waiting for segments included
+    @Value("${podcast.stream.timeout-ms:1800000}")
+    private long streamTimeoutMs;
+
+    private ExecutorService streamExecutor;
+
     @Autowired
-    public PodcastController(GeminiService geminiService, ElevenLabsService elevenLabsService, SessionService sessionService, UserContentRepository userContentRepository, UserRepository userRepository) {
+    public PodcastController(GeminiService geminiService, ArtifactService artifactService, ElevenLabsService elevenLabsService, PodcastPipelineService podcastPipelineService, SessionService sessionService, UserContentRepository userContentRepository, UserRepository userRepository) {
         this.geminiService = geminiService;
+        this.artifactService = artifactService;
         this.elevenLabsService = elevenLabsService;
+        this.podcastPipelineService = podcastPipelineService;
         this.sessionService = sessionService;
         this.userContentRepository = userContentRepository;
         this.userRepository = userRepository;
     }
 
+    @PostConstruct
+    void initStreamExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        // No queue: once every thread holds a stream, further streams are turned away with a 503
+        // rather than waiting without a deadline
+        streamExecutor = new ThreadPoolExecutor(streamThreads, streamThreads, 0L, TimeUnit.MILLISECONDS, new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "podcast-stream-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    void shutdownStreamExecutor() {
+        if (streamExecutor != null) {
+            streamExecutor.shutdownNow();
+        }
+    }
+
     @GetMapping("/podcast-script/{sessionId}")
-    public ResponseEntity<?> generatePodcastScript(@PathVariable String sessionId, @RequestHeader("Authorization") String token) {
+    public ResponseEntity<?> generatePodcastScript(@PathVariable String sessionId, @RequestHeader("Authorization") String token,
+                                        @RequestParam(value = "cache", defaultValue = "use") String cache,
+                                        @RequestParam(value = "regenerate", defaultValue = "false") boolean regenerate) {
         Long userId = AuthController.getUserIdFromToken(token);
         if (userId == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid or missing token");
@@ -60,12 +120,12 @@ public class PodcastController {
         if (content == null || content.getExtractedText() == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No PDF text found for the given session ID. Please upload a PDF first.");
         }
-        String podcastScript = geminiService.getPodcastScript(content.getExtractedText());
+        CacheMode cacheMode = ArtifactService.cacheModeFor(cache, regenerate);
+        String podcastScript = artifactService.getOrGenerate(content, ArtifactService.Artifact.PODCAST, regenerate,
+                () -> geminiService.getPodcastScript(content.getExtractedText(), cacheMode));
         if (podcastScript.startsWith("Error:")) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(podcastScript);
         }
-        content.setPodcast(podcastScript);
-        userContentRepository.save(content);
         return ResponseEntity.ok(Map.of("script", podcastScript));
     }
 
@@ -88,4 +148,133 @@ public class PodcastController {
         }
         return ResponseEntity.ok(Map.of("message", "Audio generation initiated. Check backend logs for details. Output: " + outputPath));
     }
-} 
\ No newline at end of file
+
+    /**
+     * Starts the pipelined podcast: the script streams from Gemini and each speaker turn is voiced as soon as it
+     * is complete. Progress and finished segments are available from the job endpoints.
+     */
+    @PostMapping("/podcast/{sessionId}")
+    public ResponseEntity<?> startPodcast(@PathVariable String sessionId, @RequestHeader("Authorization") String token,
+                                          @RequestParam(value = "regenerate", defaultValue = "false") boolean regenerate) {
+        Long userId = AuthController.getUserIdFromToken(token);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid or missing token");
+        }
+        UserContent content = userContentRepository.findAllByUserIdOrderByCreatedAtDesc(userId).stream().filter(c -> c.getSessionId().equals(sessionId)).findFirst().orElse(null);
+        if (content == null || content.getExtractedText() == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No PDF text found for the given session ID. Please upload a PDF first.");
+        }
+        try {
+            PodcastJob job = podcastPipelineService.start(content, userId, regenerate);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of(
+                "podcastId", job.getPodcastId(),
+                "statusUrl", "/api/pdf/podcast/jobs/" + job.getPodcastId(),
+                "streamUrl", "/api/pdf/podcast/jobs/" + job.getPodcastId() + "/stream",
+                "audioUrl", "/api/pdf/podcast/jobs/" + job.getPodcastId() + "/audio"
+            ));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "60")
+                    .body("Too many podcasts are being produced. Please try again shortly.");
+        }
+    }
+
+    @GetMapping("/podcast/jobs/{podcastId}")
+    public ResponseEntity<?> getPodcastStatus(@PathVariable String podcastId, @RequestHeader("Authorization") String token) {
+        PodcastJob job = findJob(podcastId, token);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No podcast found for the given id.");
+        }
+        return ResponseEntity.ok(job.toStatus());
+    }
+
+    /**
+     * Serves one finished segment, so playback can start before the whole podcast is voiced.
+     */
+    @GetMapping("/podcast/jobs/{podcastId}/segments/{index}")
+    public ResponseEntity<?> getPodcastSegment(@PathVariable String podcastId, @PathVariable int index, @RequestHeader("Authorization") String token) {
+        PodcastJob job = findJob(podcastId, token);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No podcast found for the given id.");
+        }
+        return audioResponse(job.getSegmentPath(index), "Segment " + index + " is not ready.");
+    }
+
+    @GetMapping("/podcast/jobs/{podcastId}/audio")
+    public ResponseEntity<?> getPodcastAudio(@PathVariable String podcastId, @RequestHeader("Authorization") String token) {
+        PodcastJob job = findJob(podcastId, token);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No podcast found for the given id.");
+        }
+        return audioResponse(job.getAudioPath(), "The podcast is not finished yet.");
+    }
+
+    /**
+     * Streams the podcast as one chunked MP3 while it is being voiced: each segment is sent, in script order,
+     * as soon as it and every segment before it have finished, so playback starts after the first turn.
+     * Segments that failed are skipped. The merged file is still saved for {@code /audio}.
+     * The stream ends after podcast.stream.timeout-ms even if segments are still outstanding.
+     */
+    @GetMapping("/podcast/jobs/{podcastId}/stream")
+    public ResponseEntity<?> streamPodcastAudio(@PathVariable String podcastId, @RequestHeader("Authorization") String token) {
+        PodcastJob job = findJob(podcastId, token);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No podcast found for the given id.");
+        }
+        if (job.getState() == PodcastJob.State.FAILED && job.getSegmentCount() == 0) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("The podcast failed before any audio was produced.");
+        }
+        // No container timeout; streamSegments enforces the deadline for the whole stream itself
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(0L);
+        try {
+            streamExecutor.execute(() -> streamSegments(emitter, job));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "10")
+                    .body("Too many podcasts are being streamed. Please try again shortly.");
+        }
+        return ResponseEntity.ok().contentType(AUDIO_MPEG).body(emitter);
+    }
+
+    private void streamSegments(ResponseBodyEmitter emitter, PodcastJob job) {
+        long deadline = System.currentTimeMillis() + streamTimeoutMs;
+        try {
+            for (int index = 0; ; index++) {
+                PodcastJob.SegmentState state = job.awaitSegment(index, deadline - System.currentTimeMillis());
+                if (state == null) {
+                    break;
+                }
+                if (state == PodcastJob.SegmentState.DONE) {
+                    emitter.send(podcastPipelineService.readSegmentAudio(job, index), AUDIO_MPEG);
+                }
+            }
+            emitter.complete();
+        } catch (IOException e) {
+            System.err.println("Podcast stream for " + job.getPodcastId() + " closed: " + e.getMessage());
+            emitter.completeWithError(e);
+        } catch (TimeoutException e) {
+            System.err.println("Podcast stream for " + job.getPodcastId() + " ran past " + streamTimeoutMs + "ms: " + e.getMessage());
+            emitter.completeWithError(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Podcast stream for " + job.getPodcastId() + " interrupted");
+            emitter.completeWithError(e);
+        } catch (Exception e) {
+            System.err.println("Unexpected error while streaming podcast " + job.getPodcastId() + ": " + e.getMessage());
+            emitter.completeWithError(e);
+        }
+    }
+
+    private PodcastJob findJob(String podcastId, String token) {
+        Long userId = AuthController.getUserIdFromToken(token);
+        PodcastJob job = podcastPipelineService.getJob(podcastId);
+        return job != null && job.getUserId().equals(userId) ? job : null;
+    }
+
+    private ResponseEntity<?> audioResponse(Path path, String notReadyMessage) {
+        if (path == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(notReadyMessage);
+        }
+        return ResponseEntity.ok().contentType(AUDIO_MPEG).body(new FileSystemResource(path));
+    }
+}
\ No newline at end of file
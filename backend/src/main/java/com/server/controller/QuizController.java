@@ -10,8 +10,11 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.server.service.ArtifactService;
+import com.server.service.CacheMode;
 import com.server.service.GeminiService;
 import com.server.service.SessionService;
 import com.server.model.User;
@@ -26,20 +29,24 @@ import com.server.controller.AuthController;
 public class QuizController {
 
     private final GeminiService geminiService;
+    private final ArtifactService artifactService;
     private final SessionService sessionService;
     private final UserContentRepository userContentRepository;
     private final UserRepository userRepository;
 
     @Autowired
-    public QuizController(GeminiService geminiService, SessionService sessionService, UserContentRepository userContentRepository, UserRepository userRepository) {
+    public QuizController(GeminiService geminiService, ArtifactService artifactService, SessionService sessionService, UserContentRepository userContentRepository, UserRepository userRepository) {
         this.geminiService = geminiService;
+        this.artifactService = artifactService;
         this.sessionService = sessionService;
         this.userContentRepository = userContentRepository;
         this.userRepository = userRepository;
     }
 
     @GetMapping("/generate-quiz/{sessionId}")
-    public ResponseEntity<?> generateQuiz(@PathVariable String sessionId, @RequestHeader("Authorization") String token) {
+    public ResponseEntity<?> generateQuiz(@PathVariable String sessionId, @RequestHeader("Authorization") String token,
+                                        @RequestParam(value = "cache", defaultValue = "use") String cache,
+                                        @RequestParam(value = "regenerate", defaultValue = "false") boolean regenerate) {
         Long userId = AuthController.getUserIdFromToken(token);
         if (userId == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid or missing token");
@@ -52,8 +59,9 @@ public class QuizController {
         if (content == null || content.getExtractedText() == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No PDF text found for the given session ID.");
         }
-        String prompt = "Generate a set of quiz questions, including multiple-choice questions (MCQs) and other possible questions, based on the following PDF content. Provide the correct answers as well.\n\n" + content.getExtractedText();
-        String quizContent = geminiService.generateQuizFromPdf(prompt);
+        CacheMode cacheMode = ArtifactService.cacheModeFor(cache, regenerate);
+        String quizContent = artifactService.getOrGenerate(content, ArtifactService.Artifact.QUIZ, regenerate,
+                () -> geminiService.generateQuizFromPdf(content.getExtractedText(), cacheMode));
         if (quizContent.startsWith("Error:")) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to generate quiz: " + quizContent);
         }
@@ -12,11 +12,15 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.server.dto.YouTubeSuggestions;
 import com.server.model.YouTubeVideo;
 import com.server.repository.UserContentRepository;
 import com.server.repository.UserRepository;
+import com.server.service.ArtifactService;
+import com.server.service.CacheMode;
 import com.server.service.GeminiService;
 import com.server.service.SessionService;
 import com.server.service.YouTubeService;
@@ -30,14 +34,16 @@ import com.server.controller.AuthController;
 public class YouTubeController {
 
     private final GeminiService geminiService;
+    private final ArtifactService artifactService;
     private final YouTubeService youtubeService;
     private final SessionService sessionService;
     private final UserContentRepository userContentRepository;
     private final UserRepository userRepository;
 
     @Autowired
-    public YouTubeController(GeminiService geminiService, YouTubeService youtubeService, SessionService sessionService, UserContentRepository userContentRepository, UserRepository userRepository) {
+    public YouTubeController(GeminiService geminiService, ArtifactService artifactService, YouTubeService youtubeService, SessionService sessionService, UserContentRepository userContentRepository, UserRepository userRepository) {
         this.geminiService = geminiService;
+        this.artifactService = artifactService;
         this.youtubeService = youtubeService;
         this.sessionService = sessionService;
         this.userContentRepository = userContentRepository;
@@ -45,7 +51,9 @@ public class YouTubeController {
     }
 
     @GetMapping("/youtube-videos/{sessionId}")
-    public ResponseEntity<?> getYouTubeVideos(@PathVariable String sessionId, @RequestHeader("Authorization") String token) {
+    public ResponseEntity<?> getYouTubeVideos(@PathVariable String sessionId, @RequestHeader("Authorization") String token,
+                                        @RequestParam(value = "cache", defaultValue = "use") String cache,
+                                        @RequestParam(value = "regenerate", defaultValue = "false") boolean regenerate) {
         Long userId = AuthController.getUserIdFromToken(token);
         if (userId == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid or missing token");
@@ -58,9 +66,16 @@ public class YouTubeController {
         if (content == null || content.getExtractedText() == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No PDF text found for the given session ID.");
         }
-        String prompt = "What is the main subject or topic discussed in the following PDF content? " +
-                        "Give a short and clear subject title that can be used to search YouTube videos.\n\n" + content.getExtractedText();
-        String identifiedSubject = geminiService.getSubjectForYouTubeSearch(prompt);
+        if (!regenerate) {
+            YouTubeSuggestions stored = youtubeService.fromStoredJson(artifactService.findCurrent(content, ArtifactService.Artifact.YOUTUBE));
+            if (stored != null) {
+                return ResponseEntity.ok(Map.of(
+                    "subject", stored.getSubject(),
+                    "videos", stored.getVideos()
+                ));
+            }
+        }
+        String identifiedSubject = geminiService.getSubjectForYouTubeSearch(content.getExtractedText(), ArtifactService.cacheModeFor(cache, regenerate));
         if (identifiedSubject.startsWith("Error:")) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to determine subject: " + identifiedSubject);
         }
@@ -68,8 +83,7 @@ public class YouTubeController {
         if (videos.isEmpty()) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No YouTube videos found for: " + identifiedSubject);
         }
-        content.setYoutube(identifiedSubject + "\n" + videos.toString());
-        userContentRepository.save(content);
+        artifactService.store(content, ArtifactService.Artifact.YOUTUBE, youtubeService.toStoredJson(identifiedSubject, videos));
         return ResponseEntity.ok(Map.of(
             "subject", identifiedSubject,
             "videos", videos
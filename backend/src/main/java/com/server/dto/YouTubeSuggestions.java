@@ -0,0 +1,36 @@
+package com.server.dto;
+
+import java.util.List;
+
+import com.server.model.YouTubeVideo;
+
+/**
+ * The YouTube search subject and its results, as stored in the youtube column.
+ */
+public class YouTubeSuggestions {
+    private String subject;
+    private List<YouTubeVideo> videos;
+
+    public YouTubeSuggestions() {}
+
+    public YouTubeSuggestions(String subject, List<YouTubeVideo> videos) {
+        this.subject = subject;
+        this.videos = videos;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    public List<YouTubeVideo> getVideos() {
+        return videos;
+    }
+
+    public void setVideos(List<YouTubeVideo> videos) {
+        this.videos = videos;
+    }
+}
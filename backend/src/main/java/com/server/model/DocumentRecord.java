@@ -0,0 +1,94 @@
+package com.server.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Content-addressed copy of everything derived from one PDF, keyed by the SHA-256 of its bytes
+ * and shared by every user who uploads the same file.
+ */
+@Entity
+@Table(name = "document_store")
+public class DocumentRecord {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, unique = true, length = 64)
+    private String contentHash;
+
+    @Lob
+    @Column(columnDefinition = "LONGTEXT")
+    private String extractedText;
+
+    // JSON array of {document, embedding} chunks, as exported by VectorStoreService
+    @Lob
+    @Column(columnDefinition = "LONGTEXT")
+    private String chunkEmbeddings;
+
+    @Lob
+    @Column(columnDefinition = "LONGTEXT")
+    private String summary;
+
+    @Lob
+    @Column(columnDefinition = "LONGTEXT")
+    private String podcast;
+
+    @Lob
+    @Column(columnDefinition = "LONGTEXT")
+    private String quiz;
+
+    // JSON {subject, videos}
+    @Lob
+    @Column(columnDefinition = "LONGTEXT")
+    private String youtube;
+
+    // Prompt fingerprint each artifact was generated under, see GeminiService.promptFingerprint
+    @Column(length = 64)
+    private String summaryFingerprint;
+
+    @Column(length = 64)
+    private String podcastFingerprint;
+
+    @Column(length = 64)
+    private String quizFingerprint;
+
+    @Column(length = 64)
+    private String youtubeFingerprint;
+
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    public DocumentRecord() {}
+
+    public DocumentRecord(String contentHash, String extractedText) {
+        this.contentHash = contentHash;
+        this.extractedText = extractedText;
+    }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public String getContentHash() { return contentHash; }
+    public void setContentHash(String contentHash) { this.contentHash = contentHash; }
+    public String getExtractedText() { return extractedText; }
+    public void setExtractedText(String extractedText) { this.extractedText = extractedText; }
+    public String getChunkEmbeddings() { return chunkEmbeddings; }
+    public void setChunkEmbeddings(String chunkEmbeddings) { this.chunkEmbeddings = chunkEmbeddings; }
+    public String getSummary() { return summary; }
+    public void setSummary(String summary) { this.summary = summary; }
+    public String getPodcast() { return podcast; }
+    public void setPodcast(String podcast) { this.podcast = podcast; }
+    public String getQuiz() { return quiz; }
+    public void setQuiz(String quiz) { this.quiz = quiz; }
+    public String getYoutube() { return youtube; }
+    public void setYoutube(String youtube) { this.youtube = youtube; }
+    public String getSummaryFingerprint() { return summaryFingerprint; }
+    public void setSummaryFingerprint(String summaryFingerprint) { this.summaryFingerprint = summaryFingerprint; }
+    public String getPodcastFingerprint() { return podcastFingerprint; }
+    public void setPodcastFingerprint(String podcastFingerprint) { this.podcastFingerprint = podcastFingerprint; }
+    public String getQuizFingerprint() { return quizFingerprint; }
+    public void setQuizFingerprint(String quizFingerprint) { this.quizFingerprint = quizFingerprint; }
+    public String getYoutubeFingerprint() { return youtubeFingerprint; }
+    public void setYoutubeFingerprint(String youtubeFingerprint) { this.youtubeFingerprint = youtubeFingerprint; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+}
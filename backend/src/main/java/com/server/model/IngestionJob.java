@@ -0,0 +1,138 @@
+package com.server.model;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Progress of one asynchronous PDF ingestion: per-stage state plus whatever results are ready so far.
+ * Updated by the ingestion workers and read by the status endpoint, so every accessor is synchronized.
+ */
+public class IngestionJob {
+
+    public enum State { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    public enum StageState { PENDING, RUNNING, DONE, SKIPPED, FAILED }
+
+    private final String jobId;
+    private final String sessionId;
+    private final Long userId;
+    private final String fileName;
+    private final Instant createdAt = Instant.now();
+    private Instant finishedAt;
+    private State state = State.QUEUED;
+    private String error;
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+    private final Map<String, Object> results = new LinkedHashMap<>();
+
+    public IngestionJob(String jobId, String sessionId, Long userId, String fileName, String... stageNames) {
+        this.jobId = jobId;
+        this.sessionId = sessionId;
+        this.userId = userId;
+        this.fileName = fileName;
+        for (String stageName : stageNames) {
+            stages.put(stageName, new Stage());
+        }
+    }
+
+    public String getJobId() { return jobId; }
+    public String getSessionId() { return sessionId; }
+    public Long getUserId() { return userId; }
+
+    public synchronized State getState() { return state; }
+    public synchronized Instant getFinishedAt() { return finishedAt; }
+
+    public synchronized void markRunning() {
+        state = State.RUNNING;
+    }
+
+    public synchronized void complete() {
+        state = State.COMPLETED;
+        finishedAt = Instant.now();
+    }
+
+    public synchronized void fail(String error) {
+        this.error = error;
+        state = State.FAILED;
+        finishedAt = Instant.now();
+        // Nothing else will run, so stages still waiting are reported as skipped
+        stages.values().stream()
+                .filter(stage -> stage.state == StageState.PENDING || stage.state == StageState.RUNNING)
+                .forEach(stage -> stage.finish(StageState.SKIPPED, null));
+    }
+
+    public synchronized void startStage(String name) {
+        Stage stage = stages.get(name);
+        if (stage.state != StageState.PENDING) {
+            return; // e.g. timed out while still queued
+        }
+        stage.state = StageState.RUNNING;
+        stage.startedAt = Instant.now();
+    }
+
+    public synchronized void finishStage(String name, StageState state, String error) {
+        stages.get(name).finish(state, error);
+    }
+
+    public synchronized void putResult(String name, Object value) {
+        results.put(name, value);
+    }
+
+    /**
+     * @return A point-in-time view of the job for the status endpoint.
+     */
+    public synchronized Map<String, Object> toStatus() {
+        Map<String, Object> stageStatus = new LinkedHashMap<>();
+        stages.forEach((name, stage) -> stageStatus.put(name, stage.toStatus()));
+
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("jobId", jobId);
+        status.put("sessionId", sessionId);
+        status.put("fileName", fileName);
+        status.put("state", state);
+        status.put("createdAt", createdAt.toString());
+        status.put("finishedAt", finishedAt != null ? finishedAt.toString() : null);
+        status.put("error", error);
+        status.put("stages", stageStatus);
+        status.put("pending", stageNames(StageState.PENDING, StageState.RUNNING));
+        status.put("failed", stageNames(StageState.FAILED));
+        status.put("results", new LinkedHashMap<>(results));
+        return status;
+    }
+
+    private List<String> stageNames(StageState... states) {
+        List<String> names = new ArrayList<>();
+        List<StageState> wanted = Arrays.asList(states);
+        stages.forEach((name, stage) -> {
+            if (wanted.contains(stage.state)) {
+                names.add(name);
+            }
+        });
+        return names;
+    }
+
+    private static class Stage {
+        private StageState state = StageState.PENDING;
+        private Instant startedAt;
+        private Instant finishedAt;
+        private String error;
+
+        private void finish(StageState state, String error) {
+            this.state = state;
+            this.error = error;
+            this.finishedAt = Instant.now();
+        }
+
+        private Map<String, Object> toStatus() {
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("state", state);
+            status.put("durationMs", startedAt != null && finishedAt != null ? Duration.between(startedAt, finishedAt).toMillis() : null);
+            status.put("error", error);
+            return status;
+        }
+    }
+}
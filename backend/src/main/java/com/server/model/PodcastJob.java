@@ -0,0 +1,223 @@
+package com.server.model;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Progress of one pipelined podcast production: the script is cut into speaker turns while it streams,
+ * and each turn becomes an audio segment as soon as it is complete.
+ * Updated by the pipeline workers and read by the status and streaming endpoints, so every accessor is synchronized,
+ * and every change notifies threads waiting in {@link #awaitSegment}.
+ */
+public class PodcastJob {
+
+    public enum State { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    public enum SegmentState { PENDING, SYNTHESIZING, DONE, FAILED }
+
+    private final String podcastId;
+    private final String sessionId;
+    private final Long userId;
+    private final Instant createdAt = Instant.now();
+    private Instant firstSegmentAt;
+    private Instant finishedAt;
+    private State state = State.QUEUED;
+    private boolean scriptComplete;
+    private String error;
+    private Path audioPath;
+    private final List<Segment> segments = new ArrayList<>();
+
+    public PodcastJob(String podcastId, String sessionId, Long userId) {
+        this.podcastId = podcastId;
+        this.sessionId = sessionId;
+        this.userId = userId;
+    }
+
+    public String getPodcastId() { return podcastId; }
+    public String getSessionId() { return sessionId; }
+    public Long getUserId() { return userId; }
+
+    public synchronized State getState() { return state; }
+    public synchronized Instant getCreatedAt() { return createdAt; }
+    public synchronized Instant getFinishedAt() { return finishedAt; }
+    public synchronized Path getAudioPath() { return audioPath; }
+
+    public synchronized void markRunning() {
+        state = State.RUNNING;
+    }
+
+    public synchronized void finishScript() {
+        scriptComplete = true;
+        notifyAll();
+    }
+
+    public synchronized void complete(Path audioPath) {
+        this.audioPath = audioPath;
+        state = State.COMPLETED;
+        finishedAt = Instant.now();
+        notifyAll();
+    }
+
+    public synchronized void fail(String error) {
+        this.error = error;
+        state = State.FAILED;
+        finishedAt = Instant.now();
+        notifyAll();
+    }
+
+    /**
+     * Adds the next speaker turn of the script.
+     * @return The segment's index, which is also its position in the final audio.
+     */
+    public synchronized int addSegment(String speaker, String text) {
+        segments.add(new Segment(speaker, text));
+        notifyAll();
+        return segments.size() - 1;
+    }
+
+    /**
+     * @return The number of segments so far; more may follow while the script is still streaming.
+     */
+    public synchronized int getSegmentCount() { return segments.size(); }
+
+    public synchronized void startSegment(int index) {
+        Segment segment = segments.get(index);
+        segment.state = SegmentState.SYNTHESIZING;
+        segment.startedAt = Instant.now();
+    }
+
+    /**
+     * @return Whether this is the first segment of the podcast to finish.
+     */
+    public synchronized boolean finishSegment(int index, Path path, int attempts) {
+        segments.get(index).finish(SegmentState.DONE, null, path, attempts);
+        notifyAll();
+        if (firstSegmentAt == null) {
+            firstSegmentAt = Instant.now();
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized void failSegment(int index, String error, int attempts) {
+        segments.get(index).finish(SegmentState.FAILED, error, null, attempts);
+        notifyAll();
+    }
+
+    /**
+     * Waits until a segment has finished, successfully or not.
+     * @param index The segment, in script order.
+     * @param timeoutMs How long to wait in total.
+     * @return The segment's final state, or null if the podcast will have no such segment
+     *         (the script ended before it, or the job failed).
+     * @throws TimeoutException If the segment is still outstanding when the timeout runs out.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public synchronized SegmentState awaitSegment(int index, long timeoutMs) throws TimeoutException, InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (true) {
+            if (index < segments.size()) {
+                SegmentState segmentState = segments.get(index).state;
+                if (segmentState == SegmentState.DONE || segmentState == SegmentState.FAILED) {
+                    return segmentState;
+                }
+            } else if (scriptComplete) {
+                return null;
+            }
+            if (state == State.FAILED) {
+                return null;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new TimeoutException("Timed out waiting for segment " + index);
+            }
+            wait(remaining);
+        }
+    }
+
+    /**
+     * @return The audio of a finished segment, or null if it is not (yet) available.
+     */
+    public synchronized Path getSegmentPath(int index) {
+        return index >= 0 && index < segments.size() ? segments.get(index).path : null;
+    }
+
+    /**
+     * @return The audio of every finished segment, in script order.
+     */
+    public synchronized List<Path> getFinishedSegmentPaths() {
+        List<Path> paths = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (segment.state == SegmentState.DONE) {
+                paths.add(segment.path);
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * @return A point-in-time view of the job for the status endpoint.
+     */
+    public synchronized Map<String, Object> toStatus() {
+        List<Map<String, Object>> segmentStatus = new ArrayList<>();
+        for (int i = 0; i < segments.size(); i++) {
+            segmentStatus.add(segments.get(i).toStatus(i));
+        }
+
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("podcastId", podcastId);
+        status.put("sessionId", sessionId);
+        status.put("state", state);
+        status.put("scriptComplete", scriptComplete);
+        status.put("createdAt", createdAt.toString());
+        status.put("firstSegmentMs", firstSegmentAt != null ? Duration.between(createdAt, firstSegmentAt).toMillis() : null);
+        status.put("finishedAt", finishedAt != null ? finishedAt.toString() : null);
+        status.put("error", error);
+        status.put("segments", segmentStatus);
+        return status;
+    }
+
+    private static class Segment {
+        private final String speaker;
+        private final String text;
+        private final Instant queuedAt = Instant.now();
+        private SegmentState state = SegmentState.PENDING;
+        private Instant startedAt;
+        private Instant finishedAt;
+        private String error;
+        private Path path;
+        private int attempts;
+
+        private Segment(String speaker, String text) {
+            this.speaker = speaker;
+            this.text = text;
+        }
+
+        private void finish(SegmentState state, String error, Path path, int attempts) {
+            this.state = state;
+            this.attempts = attempts;
+            this.error = error;
+            this.path = path;
+            this.finishedAt = Instant.now();
+        }
+
+        private Map<String, Object> toStatus(int index) {
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("index", index);
+            status.put("speaker", speaker);
+            status.put("characters", text.length());
+            status.put("state", state);
+            status.put("waitMs", startedAt != null ? Duration.between(queuedAt, startedAt).toMillis() : null);
+            status.put("durationMs", startedAt != null && finishedAt != null ? Duration.between(startedAt, finishedAt).toMillis() : null);
+            status.put("attempts", attempts);
+            status.put("error", error);
+            return status;
+        }
+    }
+}
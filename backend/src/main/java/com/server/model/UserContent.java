@@ -19,6 +19,11 @@ public class UserContent {
 
     private String originalFileName;
 
+    // Shared, content-addressed copy of the document; the columns below only override it
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "document_id")
+    private DocumentRecord document;
+
     @Lob
     @Column(columnDefinition = "LONGTEXT")
     private String extractedText;
@@ -43,6 +48,19 @@ public class UserContent {
     @Column(columnDefinition = "LONGTEXT")
     private String youtube;
 
+    // Prompt fingerprint each artifact was generated under, see GeminiService.promptFingerprint
+    @Column(length = 64)
+    private String summaryFingerprint;
+
+    @Column(length = 64)
+    private String podcastFingerprint;
+
+    @Column(length = 64)
+    private String quizFingerprint;
+
+    @Column(length = 64)
+    private String youtubeFingerprint;
+
     private LocalDateTime createdAt = LocalDateTime.now();
 
     public Long getId() { return id; }
@@ -53,18 +71,29 @@ public class UserContent {
     public void setSessionId(String sessionId) { this.sessionId = sessionId; }
     public String getOriginalFileName() { return originalFileName; }
     public void setOriginalFileName(String originalFileName) { this.originalFileName = originalFileName; }
-    public String getExtractedText() { return extractedText; }
+    public DocumentRecord getDocument() { return document; }
+    public void setDocument(DocumentRecord document) { this.document = document; }
+    public String getExtractedText() { return extractedText != null || document == null ? extractedText : document.getExtractedText(); }
     public void setExtractedText(String extractedText) { this.extractedText = extractedText; }
-    public String getSummary() { return summary; }
+    public String getSummary() { return summary != null || document == null ? summary : document.getSummary(); }
     public void setSummary(String summary) { this.summary = summary; }
-    public String getPodcast() { return podcast; }
+    public String getPodcast() { return podcast != null || document == null ? podcast : document.getPodcast(); }
     public void setPodcast(String podcast) { this.podcast = podcast; }
-    public String getQuiz() { return quiz; }
+    public String getQuiz() { return quiz != null || document == null ? quiz : document.getQuiz(); }
     public void setQuiz(String quiz) { this.quiz = quiz; }
     public String getVideo() { return video; }
     public void setVideo(String video) { this.video = video; }
-    public String getYoutube() { return youtube; }
+    public String getYoutube() { return youtube != null || document == null ? youtube : document.getYoutube(); }
     public void setYoutube(String youtube) { this.youtube = youtube; }
+    // A fingerprint comes from wherever its artifact does
+    public String getSummaryFingerprint() { return summary != null || document == null ? summaryFingerprint : document.getSummaryFingerprint(); }
+    public void setSummaryFingerprint(String summaryFingerprint) { this.summaryFingerprint = summaryFingerprint; }
+    public String getPodcastFingerprint() { return podcast != null || document == null ? podcastFingerprint : document.getPodcastFingerprint(); }
+    public void setPodcastFingerprint(String podcastFingerprint) { this.podcastFingerprint = podcastFingerprint; }
+    public String getQuizFingerprint() { return quiz != null || document == null ? quizFingerprint : document.getQuizFingerprint(); }
+    public void setQuizFingerprint(String quizFingerprint) { this.quizFingerprint = quizFingerprint; }
+    public String getYoutubeFingerprint() { return youtube != null || document == null ? youtubeFingerprint : document.getYoutubeFingerprint(); }
+    public void setYoutubeFingerprint(String youtubeFingerprint) { this.youtubeFingerprint = youtubeFingerprint; }
     public LocalDateTime getCreatedAt() { return createdAt; }
     public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
 } 
\ No newline at end of file
@@ -0,0 +1,42 @@
+package com.server.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.server.model.DocumentRecord;
+
+@Repository
+public interface DocumentRecordRepository extends JpaRepository<DocumentRecord, Long> {
+    DocumentRecord findByContentHash(String contentHash);
+
+    // Column-level updates, so jobs writing different artifacts of one record never overwrite each other
+
+    @Modifying
+    @Transactional
+    @Query("update DocumentRecord d set d.chunkEmbeddings = :chunkEmbeddings where d.id = :id")
+    int updateChunkEmbeddings(@Param("id") Long id, @Param("chunkEmbeddings") String chunkEmbeddings);
+
+    @Modifying
+    @Transactional
+    @Query("update DocumentRecord d set d.summary = :summary, d.summaryFingerprint = :fingerprint where d.id = :id")
+    int updateSummary(@Param("id") Long id, @Param("summary") String summary, @Param("fingerprint") String fingerprint);
+
+    @Modifying
+    @Transactional
+    @Query("update DocumentRecord d set d.podcast = :podcast, d.podcastFingerprint = :fingerprint where d.id = :id")
+    int updatePodcast(@Param("id") Long id, @Param("podcast") String podcast, @Param("fingerprint") String fingerprint);
+
+    @Modifying
+    @Transactional
+    @Query("update DocumentRecord d set d.quiz = :quiz, d.quizFingerprint = :fingerprint where d.id = :id")
+    int updateQuiz(@Param("id") Long id, @Param("quiz") String quiz, @Param("fingerprint") String fingerprint);
+
+    @Modifying
+    @Transactional
+    @Query("update DocumentRecord d set d.youtube = :youtube, d.youtubeFingerprint = :fingerprint where d.id = :id")
+    int updateYoutube(@Param("id") Long id, @Param("youtube") String youtube, @Param("fingerprint") String fingerprint);
+}
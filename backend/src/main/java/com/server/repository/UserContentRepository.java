@@ -1,7 +1,11 @@
 package com.server.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.server.model.UserContent;
 
@@ -10,4 +14,26 @@ import java.util.List;
 @Repository
 public interface UserContentRepository extends JpaRepository<UserContent, Long> {
     List<UserContent> findAllByUserIdOrderByCreatedAtDesc(Long userId);
-} 
\ No newline at end of file
+
+    // Column-level updates, so an artifact stored late (e.g. by the podcast pipeline) can't revert the row's other columns
+
+    @Modifying
+    @Transactional
+    @Query("update UserContent c set c.summary = :summary, c.summaryFingerprint = :fingerprint where c.id = :id")
+    int updateSummary(@Param("id") Long id, @Param("summary") String summary, @Param("fingerprint") String fingerprint);
+
+    @Modifying
+    @Transactional
+    @Query("update UserContent c set c.podcast = :podcast, c.podcastFingerprint = :fingerprint where c.id = :id")
+    int updatePodcast(@Param("id") Long id, @Param("podcast") String podcast, @Param("fingerprint") String fingerprint);
+
+    @Modifying
+    @Transactional
+    @Query("update UserContent c set c.quiz = :quiz, c.quizFingerprint = :fingerprint where c.id = :id")
+    int updateQuiz(@Param("id") Long id, @Param("quiz") String quiz, @Param("fingerprint") String fingerprint);
+
+    @Modifying
+    @Transactional
+    @Query("update UserContent c set c.youtube = :youtube, c.youtubeFingerprint = :fingerprint where c.id = :id")
+    int updateYoutube(@Param("id") Long id, @Param("youtube") String youtube, @Param("fingerprint") String fingerprint);
+}
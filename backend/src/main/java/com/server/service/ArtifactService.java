@@ -0,0 +1,141 @@
+package com.server.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.server.model.UserContent;
+import com.server.repository.UserContentRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Serves a session's generated artifacts from storage, generating and storing them only when they are
+ * missing, were produced by an older prompt, or the caller asks for a regeneration.
+ */
+@Service
+public class ArtifactService {
+
+    /**
+     * The artifacts memoised on {@link UserContent}, with the task that generates each on its own.
+     */
+    public enum Artifact {
+        SUMMARY(GeminiTask.SUMMARY, UserContent::getSummary, UserContent::setSummary,
+                UserContent::getSummaryFingerprint, UserContent::setSummaryFingerprint, UserContentRepository::updateSummary),
+        PODCAST(GeminiTask.PODCAST, UserContent::getPodcast, UserContent::setPodcast,
+                UserContent::getPodcastFingerprint, UserContent::setPodcastFingerprint, UserContentRepository::updatePodcast),
+        QUIZ(GeminiTask.QUIZ, UserContent::getQuiz, UserContent::setQuiz,
+                UserContent::getQuizFingerprint, UserContent::setQuizFingerprint, UserContentRepository::updateQuiz),
+        // Stored as {subject, videos} JSON; the subject is the generated part
+        YOUTUBE(GeminiTask.SUBJECT, UserContent::getYoutube, UserContent::setYoutube,
+                UserContent::getYoutubeFingerprint, UserContent::setYoutubeFingerprint, UserContentRepository::updateYoutube);
+
+        private final GeminiTask task;
+        private final Function<UserContent, String> value;
+        private final BiConsumer<UserContent, String> setValue;
+        private final Function<UserContent, String> fingerprint;
+        private final BiConsumer<UserContent, String> setFingerprint;
+        private final ColumnUpdate update;
+
+        Artifact(GeminiTask task, Function<UserContent, String> value, BiConsumer<UserContent, String> setValue,
+                 Function<UserContent, String> fingerprint, BiConsumer<UserContent, String> setFingerprint, ColumnUpdate update) {
+            this.task = task;
+            this.value = value;
+            this.setValue = setValue;
+            this.fingerprint = fingerprint;
+            this.setFingerprint = setFingerprint;
+            this.update = update;
+        }
+
+        public GeminiTask getTask() {
+            return task;
+        }
+    }
+
+    /**
+     * Writes one artifact's value and fingerprint columns of a content row.
+     */
+    @FunctionalInterface
+    private interface ColumnUpdate {
+        int apply(UserContentRepository repository, Long id, String value, String fingerprint);
+    }
+
+    private final GeminiService geminiService;
+    private final UserContentRepository userContentRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public ArtifactService(GeminiService geminiService, UserContentRepository userContentRepository, MeterRegistry meterRegistry) {
+        this.geminiService = geminiService;
+        this.userContentRepository = userContentRepository;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @param content The session's content row.
+     * @param artifact The artifact wanted.
+     * @return The stored artifact if it is usable and was generated by the current prompt, otherwise null.
+     */
+    public String findCurrent(UserContent content, Artifact artifact) {
+        String stored = artifact.value.apply(content);
+        if (DocumentStoreService.isUsable(stored) && geminiService.isCurrentFingerprint(artifact.task, artifact.fingerprint.apply(content))) {
+            return stored;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the stored artifact, or generates and stores it.
+     * @param content The session's content row.
+     * @param artifact The artifact wanted.
+     * @param regenerate Whether to ignore the stored artifact and generate a fresh one.
+     * @param generator Generates the artifact; an "Error:" result is returned but not stored.
+     * @return The artifact, or an "Error:" message.
+     */
+    public String getOrGenerate(UserContent content, Artifact artifact, boolean regenerate, Supplier<String> generator) {
+        if (!regenerate) {
+            String stored = findCurrent(content, artifact);
+            if (stored != null) {
+                count(artifact, "stored");
+                return stored;
+            }
+        }
+        String generated = generator.get();
+        if (DocumentStoreService.isUsable(generated)) {
+            store(content, artifact, generated);
+            count(artifact, regenerate ? "regenerated" : "generated");
+        }
+        return generated;
+    }
+
+    /**
+     * Stores an artifact on the session's row under the current prompt fingerprint. The row's own columns
+     * override the shared document record, so a regeneration only affects this session.
+     * Only the artifact's own columns are written, so a caller holding an older copy of the row (such as the
+     * podcast pipeline, which stores its script minutes after the request loaded it) can't revert the others.
+     */
+    public void store(UserContent content, Artifact artifact, String value) {
+        String fingerprint = geminiService.promptFingerprint(artifact.task);
+        artifact.update.apply(userContentRepository, content.getId(), value, fingerprint);
+        // Keep the caller's copy in step with the row
+        artifact.setValue.accept(content, value);
+        artifact.setFingerprint.accept(content, fingerprint);
+    }
+
+    /**
+     * @param cache The cache query parameter.
+     * @param regenerate Whether a regeneration was asked for.
+     * @return The response cache mode; a regeneration refreshes the cached Gemini response, which would otherwise come straight back.
+     */
+    public static CacheMode cacheModeFor(String cache, boolean regenerate) {
+        CacheMode cacheMode = CacheMode.fromParam(cache);
+        return regenerate && cacheMode == CacheMode.USE ? CacheMode.REFRESH : cacheMode;
+    }
+
+    private void count(Artifact artifact, String result) {
+        meterRegistry.counter("artifacts.requests", "artifact", artifact.name().toLowerCase(), "result", result).increment();
+    }
+}
@@ -0,0 +1,28 @@
+package com.server.service;
+
+/**
+ * How a Gemini call should use the response cache.
+ */
+public enum CacheMode {
+    /** Serve from the cache when possible, store fresh responses. */
+    USE,
+    /** Skip the cache entirely: neither read nor store. */
+    BYPASS,
+    /** Ignore any cached response but store the fresh one in its place. */
+    REFRESH;
+
+    /**
+     * @param value The "cache" request parameter, e.g. "bypass"; null or unknown values mean USE.
+     * @return The matching mode.
+     */
+    public static CacheMode fromParam(String value) {
+        if (value != null) {
+            for (CacheMode mode : values()) {
+                if (mode.name().equalsIgnoreCase(value.trim())) {
+                    return mode;
+                }
+            }
+        }
+        return USE;
+    }
+}
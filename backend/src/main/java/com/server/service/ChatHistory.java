@@ -0,0 +1,72 @@
+package com.server.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The conversation of one chat session: a rolling summary of older turns plus the turns not yet folded into it.
+ * Turns are appended by chat requests and folded by the background summariser, so every accessor is synchronized.
+ */
+public class ChatHistory {
+
+    private final List<Map<String, String>> turns = new ArrayList<>();
+    private String summary;
+    private int summarizedTurns;
+    private boolean folding;
+
+    public synchronized void addExchange(String question, String answer) {
+        turns.add(Map.of("role", "user", "content", question));
+        turns.add(Map.of("role", "assistant", "content", answer));
+    }
+
+    /**
+     * @return The turns not yet covered by the summary, oldest first.
+     */
+    public synchronized List<Map<String, String>> getTurns() {
+        return new ArrayList<>(turns);
+    }
+
+    /**
+     * @return The summary of the folded turns, or null if nothing has been folded yet.
+     */
+    public synchronized String getSummary() {
+        return summary;
+    }
+
+    /**
+     * @return How many turns the summary covers.
+     */
+    public synchronized int getSummarizedTurns() {
+        return summarizedTurns;
+    }
+
+    /**
+     * Claims the turns beyond the most recent ones for folding, unless a fold is already running.
+     * @param keepRecent How many of the latest turns stay verbatim.
+     * @return The oldest turns to fold, or an empty list if there is nothing to do.
+     */
+    synchronized List<Map<String, String>> beginFold(int keepRecent) {
+        int excess = turns.size() - keepRecent;
+        if (folding || excess <= 0) {
+            return List.of();
+        }
+        folding = true;
+        return new ArrayList<>(turns.subList(0, excess));
+    }
+
+    /**
+     * Replaces the folded turns with the new summary.
+     * @param newSummary The summary covering the previous summary and the folded turns, or null if folding failed.
+     * @param foldedTurns How many turns {@link #beginFold} handed out.
+     */
+    synchronized void finishFold(String newSummary, int foldedTurns) {
+        folding = false;
+        if (newSummary == null) {
+            return; // Keep the turns; the next exchange retries
+        }
+        turns.subList(0, foldedTurns).clear();
+        summary = newSummary;
+        summarizedTurns += foldedTurns;
+    }
+}
@@ -0,0 +1,210 @@
+package com.server.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Assembles chat prompts within a token budget. The retrieved context is capped, the most recent turns are kept
+ * verbatim newest-first while they fit, and turns older than that are folded into a rolling summary in the
+ * background, one batch at a time, so a long session costs roughly the same per question as a short one.
+ */
+@Service
+public class ChatPromptBuilder {
+
+    private static final String PROMPT_TEMPLATE = """
+            You are an expert assistant. Use the following context from a document to answer the user's question.
+
+            Context:
+            %s
+            %s
+            Conversation so far:
+            %sUser: %s
+
+            Answer:""";
+
+    @Value("${chat.prompt.budget-tokens:8000}")
+    private int budgetTokens;
+
+    @Value("${chat.prompt.context-tokens:3000}")
+    private int contextTokens;
+
+    // Turns kept verbatim; anything older is folded into the summary
+    @Value("${chat.history.recent-turns:8}")
+    private int recentTurns;
+
+    @Value("${chat.history.summary-words:250}")
+    private int summaryWords;
+
+    private final GeminiService geminiService;
+    private final MeterRegistry meterRegistry;
+    private ExecutorService summaryExecutor;
+
+    @Autowired
+    public ChatPromptBuilder(GeminiService geminiService, MeterRegistry meterRegistry) {
+        this.geminiService = geminiService;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() {
+        summaryExecutor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "chat-summary");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (summaryExecutor != null) {
+            summaryExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Estimated token usage of one chat prompt, by part.
+     */
+    public record TokenUsage(int instructions, int context, int summary, int history, int question,
+                             int turnsIncluded, int turnsDropped, int budget) {
+        public int total() {
+            return instructions + context + summary + history + question;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> usage = new LinkedHashMap<>();
+            usage.put("instructions", instructions);
+            usage.put("context", context);
+            usage.put("summary", summary);
+            usage.put("history", history);
+            usage.put("question", question);
+            usage.put("total", total());
+            usage.put("budget", budget);
+            usage.put("turnsIncluded", turnsIncluded);
+            usage.put("turnsDropped", turnsDropped);
+            return usage;
+        }
+    }
+
+    public record ChatPrompt(String prompt, TokenUsage usage) {}
+
+    /**
+     * @param question The user's question.
+     * @param contextChunks Retrieved chunks, most relevant first.
+     * @param history The session's conversation.
+     * @return The prompt and its estimated token usage.
+     */
+    public ChatPrompt build(String question, List<String> contextChunks, ChatHistory history) {
+        int instructionTokens = TextSections.estimateTokens(String.format(PROMPT_TEMPLATE, "", "", "", ""));
+        int questionTokens = TextSections.estimateTokens(question);
+        int remaining = Math.max(0, budgetTokens - instructionTokens - questionTokens);
+
+        // Context first: it is what the answer is grounded in
+        String context = fitChunks(contextChunks, Math.min(contextTokens, remaining));
+        int usedContext = TextSections.estimateTokens(context);
+        remaining -= usedContext;
+
+        String summary = history.getSummary();
+        String summarySection = "";
+        int usedSummary = 0;
+        if (summary != null && TextSections.estimateTokens(summary) <= remaining) {
+            summarySection = "\nSummary of the earlier conversation:\n" + summary + "\n";
+            usedSummary = TextSections.estimateTokens(summarySection);
+            remaining -= usedSummary;
+        }
+
+        // Newest turns first, until the budget runs out
+        List<Map<String, String>> turns = history.getTurns();
+        List<String> included = new ArrayList<>();
+        int usedHistory = 0;
+        for (int i = turns.size() - 1; i >= 0; i--) {
+            Map<String, String> turn = turns.get(i);
+            String line = turn.get("role") + ": " + turn.get("content") + "\n";
+            int lineTokens = TextSections.estimateTokens(line);
+            if (usedHistory + lineTokens > remaining) {
+                break;
+            }
+            included.add(line);
+            usedHistory += lineTokens;
+        }
+        Collections.reverse(included);
+
+        String prompt = String.format(PROMPT_TEMPLATE, context, summarySection, String.join("", included), question);
+        TokenUsage usage = new TokenUsage(instructionTokens, usedContext, usedSummary, usedHistory, questionTokens,
+                included.size(), turns.size() - included.size(), budgetTokens);
+        recordUsage(usage);
+        return new ChatPrompt(prompt, usage);
+    }
+
+    /**
+     * Records a completed exchange and, once the session has more than the recent turns, folds the oldest
+     * into the summary in the background. Only the new turns and the previous summary are sent each time.
+     */
+    public void recordExchange(ChatHistory history, String question, String answer) {
+        history.addExchange(question, answer);
+        List<Map<String, String>> toFold = history.beginFold(recentTurns);
+        if (toFold.isEmpty()) {
+            return;
+        }
+        String previousSummary = history.getSummary();
+        try {
+            summaryExecutor.execute(() -> {
+                String updated = null;
+                try {
+                    String result = geminiService.summarizeConversation(previousSummary, toFold, summaryWords);
+                    if (result.startsWith("Error:")) {
+                        System.err.println("Failed to fold chat history: " + result);
+                    } else {
+                        updated = result.strip();
+                    }
+                } finally {
+                    history.finishFold(updated, toFold.size());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            history.finishFold(null, toFold.size());
+        }
+    }
+
+    private String fitChunks(List<String> chunks, int maxTokens) {
+        StringBuilder context = new StringBuilder();
+        for (String chunk : chunks) {
+            String separator = context.length() > 0 ? "\n" : "";
+            int room = maxTokens - TextSections.estimateTokens(context.toString() + separator);
+            if (room <= 0) {
+                break;
+            }
+            if (TextSections.estimateTokens(chunk) > room) {
+                // Chunks are ranked, so trim the least relevant one that does not fit and stop
+                context.append(separator).append(chunk, 0, Math.min(chunk.length(), room * TextSections.CHARS_PER_TOKEN));
+                break;
+            }
+            context.append(separator).append(chunk);
+        }
+        return context.toString();
+    }
+
+    private void recordUsage(TokenUsage usage) {
+        DistributionSummary.builder("chat.prompt.tokens")
+                .description("Estimated tokens per chat prompt")
+                .register(meterRegistry)
+                .record(usage.total());
+        System.out.println("Chat prompt ~" + usage.total() + "/" + usage.budget() + " tokens (context " + usage.context()
+                + ", summary " + usage.summary() + ", history " + usage.history() + " over " + usage.turnsIncluded() + " turns"
+                + (usage.turnsDropped() > 0 ? ", " + usage.turnsDropped() + " turns awaiting summary" : "") + ")");
+    }
+}
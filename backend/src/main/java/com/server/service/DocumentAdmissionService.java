@@ -0,0 +1,82 @@
+package com.server.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Global admission limit on the total size of PDF documents being processed at once,
+ * so a burst of large uploads queues up instead of exhausting the heap.
+ */
+@Service
+public class DocumentAdmissionService {
+
+    private static final long PERMIT_BYTES = 1024; // Semaphore permits are ints, so account in KB
+
+    @Value("${pdf.admission.max-inflight-bytes:536870912}") // 512 MB
+    private long maxInflightBytes;
+
+    // How long an ingestion job waits for room; on timeout the job fails as "server busy"
+    @Value("${pdf.admission.wait-timeout-ms:30000}")
+    private long waitTimeoutMs;
+
+    private Semaphore permits;
+    private int totalPermits;
+
+    @PostConstruct
+    void init() {
+        totalPermits = (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxInflightBytes / PERMIT_BYTES));
+        permits = new Semaphore(totalPermits, true); // fair, so large documents aren't starved by small ones
+    }
+
+    /**
+     * Waits up to the configured timeout for room to process a document of the given size.
+     * Documents larger than the whole budget are admitted once nothing else is in flight.
+     * @param documentBytes The size of the document.
+     * @return The admission ticket to release when processing finishes, or null if the wait timed out.
+     */
+    public Admission tryAdmit(long documentBytes) throws InterruptedException {
+        int needed = permitsFor(documentBytes);
+        if (!permits.tryAcquire(needed, waitTimeoutMs, TimeUnit.MILLISECONDS)) {
+            System.err.println("Rejected document of " + documentBytes + " bytes: " + getInflightBytes()
+                    + " of " + maxInflightBytes + " in-flight bytes in use");
+            return null;
+        }
+        return new Admission(needed);
+    }
+
+    /**
+     * @return The number of document bytes currently admitted.
+     */
+    public long getInflightBytes() {
+        return (long) (totalPermits - permits.availablePermits()) * PERMIT_BYTES;
+    }
+
+    private int permitsFor(long documentBytes) {
+        long needed = (documentBytes + PERMIT_BYTES - 1) / PERMIT_BYTES;
+        return (int) Math.max(1, Math.min(totalPermits, needed));
+    }
+
+    /**
+     * A granted share of the in-flight budget. Closing it returns the share exactly once.
+     */
+    public final class Admission implements AutoCloseable {
+        private final int heldPermits;
+        private boolean released;
+
+        private Admission(int heldPermits) {
+            this.heldPermits = heldPermits;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!released) {
+                released = true;
+                permits.release(heldPermits);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.server.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import com.server.model.DocumentRecord;
+import com.server.repository.DocumentRecordRepository;
+
+/**
+ * Content-addressed store of extracted text, embeddings and generated artifacts,
+ * so identical PDFs uploaded by different users are only processed once.
+ */
+@Service
+public class DocumentStoreService {
+
+    private final DocumentRecordRepository documentRecordRepository;
+
+    @Autowired
+    public DocumentStoreService(DocumentRecordRepository documentRecordRepository) {
+        this.documentRecordRepository = documentRecordRepository;
+    }
+
+    /**
+     * @param contentHash The SHA-256 of the PDF bytes, hex-encoded.
+     * @return The stored record, or null if this PDF has not been extracted before.
+     */
+    public DocumentRecord findByHash(String contentHash) {
+        return documentRecordRepository.findByContentHash(contentHash);
+    }
+
+    /**
+     * Stores the extracted text of a new document. If the same PDF was stored concurrently
+     * by another upload, that record is returned instead.
+     * @param contentHash The SHA-256 of the PDF bytes, hex-encoded.
+     * @param extractedText The text extracted from the PDF.
+     * @return The stored record.
+     */
+    public DocumentRecord saveExtraction(String contentHash, String extractedText) {
+        try {
+            return documentRecordRepository.saveAndFlush(new DocumentRecord(contentHash, extractedText));
+        } catch (DataIntegrityViolationException e) {
+            DocumentRecord existing = documentRecordRepository.findByContentHash(contentHash);
+            if (existing == null) {
+                throw e;
+            }
+            return existing;
+        }
+    }
+
+    /**
+     * Stores a record's chunk embeddings, updating only that column.
+     * @param record The stored record.
+     * @param chunkEmbeddings The chunks as exported by {@link VectorStoreService#exportCollection(String)}.
+     */
+    public void storeChunkEmbeddings(DocumentRecord record, String chunkEmbeddings) {
+        documentRecordRepository.updateChunkEmbeddings(record.getId(), chunkEmbeddings);
+    }
+
+    /**
+     * Stores a generated artifact and the fingerprint of the prompt that produced it, updating only those
+     * two columns, so stages and uploads writing other artifacts of the same record don't overwrite them.
+     * @param record The stored record.
+     * @param task The task whose artifact this is.
+     * @param value The artifact.
+     * @param fingerprint The prompt fingerprint, see {@link GeminiService#promptFingerprint}.
+     */
+    public void storeArtifact(DocumentRecord record, GeminiTask task, String value, String fingerprint) {
+        Long id = record.getId();
+        switch (task) {
+            case SUMMARY -> documentRecordRepository.updateSummary(id, value, fingerprint);
+            case PODCAST -> documentRecordRepository.updatePodcast(id, value, fingerprint);
+            case QUIZ -> documentRecordRepository.updateQuiz(id, value, fingerprint);
+            case SUBJECT -> documentRecordRepository.updateYoutube(id, value, fingerprint);
+            default -> throw new IllegalArgumentException("No stored artifact for task " + task);
+        }
+    }
+
+    /**
+     * @return Whether a generated artifact is present and is not an error message.
+     */
+    public static boolean isUsable(String artifact) {
+        return artifact != null && !artifact.isBlank() && !artifact.startsWith("Error:");
+    }
+}
@@ -1,16 +1,17 @@
 package com.server.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.apache.hc.client5.http.classic.methods.HttpPost;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.HttpClients;
 import org.apache.hc.core5.http.HttpEntity;
 import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.io.entity.StringEntity;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -18,6 +19,10 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class ElevenLabsService {
@@ -26,63 +31,121 @@ public class ElevenLabsService {
     private String elevenLabsApiKey;
 
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CloseableHttpClient httpClient;
+    private final UpstreamGuard elevenLabsGuard;
+    private final VoiceRegistry voiceRegistry;
+    private final TtsSegmentCache segmentCache;
 
+    // Overridable so the client can be pointed at a local stub
+    @Value("${elevenlabs.api.base-url:https://api.elevenlabs.io}")
+    private String elevenLabsBaseUrl;
+
+    @Value("${elevenlabs.tts.model-id:eleven_monolingual_v1}")
+    private String ttsModelId;
+
+    // Segments synthesised at once across all podcasts; match the concurrent request limit of the ElevenLabs plan
+    @Value("${elevenlabs.tts.concurrency:4}")
+    private int ttsConcurrency;
+
+    // Attempts per segment for failures the request-level retries don't cover, e.g. a truncated or empty body
+    @Value("${elevenlabs.tts.segment-attempts:3}")
+    private int segmentAttempts;
+
+    @Value("${elevenlabs.tts.segment-retry-backoff-ms:1000}")
+    private long segmentRetryBackoffMs;
+
+    private ExecutorService synthesisExecutor;
+
+    /**
+     * The outcome of one segment, at its position in the script.
+     * @param path The audio, or null if every attempt failed.
+     * @param error Why the last attempt failed, or null.
+     */
+    public record SegmentResult(int index, Path path, String error, int attempts) {
+        /**
+         * @return Whether the segment failed because the upstream guard had given up on ElevenLabs.
+         */
+        public boolean upstreamUnavailable() {
+            return UPSTREAM_UNAVAILABLE.equals(error);
+        }
+    }
+
+    private static final String UPSTREAM_UNAVAILABLE = "Error: ElevenLabs API is busy or unavailable.";
+
+    @Autowired
+    public ElevenLabsService(CloseableHttpClient httpClient, @Qualifier("elevenLabsGuard") UpstreamGuard elevenLabsGuard,
+                             VoiceRegistry voiceRegistry, TtsSegmentCache segmentCache) {
+        // Shared pooled client, see HttpClientConfig; it is closed with the application context
+        this.httpClient = httpClient;
+        this.elevenLabsGuard = elevenLabsGuard;
+        this.voiceRegistry = voiceRegistry;
+        this.segmentCache = segmentCache;
+    }
+
+    @PostConstruct
+    void initSynthesisExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        synthesisExecutor = Executors.newFixedThreadPool(ttsConcurrency, runnable -> {
+            Thread thread = new Thread(runnable, "elevenlabs-tts-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdownSynthesisExecutor() {
+        if (synthesisExecutor != null) {
+            synthesisExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Voices a whole script and merges the turns into one MP3 file.
+     * @return A status message; an "Error:" message if ElevenLabs was unavailable or no segment could be generated.
+     */
     public String convertScriptToAudio(String script, String outputFilePath) {
         List<String> tempAudioPaths = new ArrayList<>();
 
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-            Map<String, String> voiceMap = getVoiceIdMap(httpClient);
-            System.out.println("Voice map: " + voiceMap);
-
-            String[] lines = script.split("\n");
-            String currentSpeaker = null;
-            StringBuilder currentText = new StringBuilder();
-
-            for (String line : lines) {
-                line = cleanText(line);
-                if (line.trim().isEmpty()) continue;
-
-                String newSpeaker = null;
-                String lineText = "";
-
-                String trimmedLine = line.trim();
-                if (trimmedLine.toLowerCase().startsWith("sarah:")) {
-                    newSpeaker = "Sarah";
-                    lineText = trimmedLine.substring("Sarah:".length()).trim();
-                } else if (trimmedLine.toLowerCase().startsWith("dr. adam:")) {
-                    newSpeaker = "Dr. Adam";
-                    lineText = trimmedLine.substring("Dr. Adam:".length()).trim();
-                }else {
-                    lineText = line;
-                }
-                System.out.println("Available voices: " + voiceMap.keySet());
-
-                if (newSpeaker != null && currentText.length() > 0) {
-                    // Generate audio for previous speaker
-                    synthesizeAndSaveAudio(httpClient, currentText.toString(), currentSpeaker, voiceMap, tempAudioPaths, outputFilePath);
-                    currentText.setLength(0);
-                }
+        try {
+            List<String[]> turns = new ArrayList<>();
+            ScriptTurnParser parser = new ScriptTurnParser(voiceRegistry.getSpeakers(), (speaker, text) -> turns.add(new String[]{speaker, text}));
+            parser.accept(script);
+            parser.finish();
 
-                if (newSpeaker != null) {
-                    currentSpeaker = newSpeaker;
+            // All turns are synthesised concurrently; results are collected by index, so the order is the script's
+            List<CompletableFuture<SegmentResult>> segments = new ArrayList<>();
+            for (int i = 0; i < turns.size(); i++) {
+                String tempAudioFile = outputFilePath.replace(".mp3", "") + "_" + UUID.randomUUID().toString().substring(0, 8) + ".mp3";
+                segments.add(synthesizeSegmentAsync(i, turns.get(i)[1], turns.get(i)[0], Path.of(tempAudioFile), () -> {}));
+            }
+            List<SegmentResult> failed = new ArrayList<>();
+            for (CompletableFuture<SegmentResult> segment : segments) {
+                SegmentResult result = segment.join();
+                if (result.path() != null) {
+                    tempAudioPaths.add(result.path().toString());
+                } else {
+                    failed.add(result);
                 }
-
-                currentText.append(lineText).append(" ");
             }
 
-            // Generate audio for the last chunk
-            if (currentText.length() > 0 && currentSpeaker != null) {
-                synthesizeAndSaveAudio(httpClient, currentText.toString(), currentSpeaker, voiceMap, tempAudioPaths, outputFilePath);
+            if (failed.stream().anyMatch(SegmentResult::upstreamUnavailable)) {
+                System.err.println("ElevenLabs API unavailable for " + failed.size() + " of " + turns.size() + " segments");
+                return "Error: ElevenLabs API is busy or unavailable. Please try again shortly.";
+            }
+            if (tempAudioPaths.isEmpty()) {
+                return turns.isEmpty()
+                        ? "Error: No speaker turns were found in the script."
+                        : "Error: No audio segments were generated. " + failed.get(0).error();
             }
 
-            if (!tempAudioPaths.isEmpty()) {
-                mergeMp3Files(tempAudioPaths, outputFilePath);
-                System.out.println("Final merged audio saved to: " + outputFilePath);
-                tempAudioPaths.forEach(path -> new File(path).delete());
-                return "Audio created successfully.";
-            } else {
-                return "No audio segments were generated.";
+            mergeMp3Files(tempAudioPaths, outputFilePath);
+            System.out.println("Final merged audio saved to: " + outputFilePath);
+            if (!failed.isEmpty()) {
+                // The turns that failed are missing from the audio; say so rather than report success
+                System.err.println(failed.size() + " of " + turns.size() + " segments failed, first: " + failed.get(0).error());
+                return "Audio created without " + failed.size() + " of " + turns.size() + " segments, which could not be generated.";
             }
+            return "Audio created successfully.";
 
         } catch (IOException e) {
             e.printStackTrace();
@@ -90,27 +153,77 @@ public class ElevenLabsService {
         } catch (Exception e) {
             e.printStackTrace();
             return "Error: Unexpected error during audio processing.";
+        } finally {
+            tempAudioPaths.forEach(path -> new File(path).delete());
         }
     }
 
-    private void synthesizeAndSaveAudio(CloseableHttpClient httpClient, String text, String speaker, Map<String, String> voiceMap, List<String> tempAudioPaths, String outputFilePath) throws IOException {
-        String voiceName = switch (speaker) {
-            case "Sarah" -> "Sarah"; // actual voice in your map
-            case "Dr. Adam" -> "Brian"; // use Brian for Dr. Adam
-            default -> "Sarah"; // default fallback
-        };
+    /**
+     * Queues one speaker turn for synthesis, retrying it on its own if it fails. At most elevenlabs.tts.concurrency
+     * segments are synthesised at once; queued segments start in the order they were submitted.
+     * @param index The segment's position in the script, carried through to the result.
+     * @param onStart Called when synthesis of the segment actually starts.
+     * @return A future that always completes normally, with the audio path or the reason it failed.
+     */
+    public CompletableFuture<SegmentResult> synthesizeSegmentAsync(int index, String text, String speaker, Path target, Runnable onStart) {
+        return CompletableFuture.supplyAsync(() -> {
+            onStart.run();
+            String error = null;
+            for (int attempt = 1; attempt <= segmentAttempts; attempt++) {
+                try {
+                    if (synthesizeSegment(text, speaker, target)) {
+                        return new SegmentResult(index, target, null, attempt);
+                    }
+                    error = "No audio was returned for this segment.";
+                } catch (UpstreamGuard.UpstreamUnavailableException e) {
+                    // The guard has already given up on ElevenLabs; another attempt would only wait again
+                    return new SegmentResult(index, null, UPSTREAM_UNAVAILABLE, attempt);
+                } catch (IOException e) {
+                    error = "Error: " + e.getMessage();
+                }
+                System.err.println("Segment " + index + " attempt " + attempt + " failed: " + error);
+                try {
+                    Files.deleteIfExists(target);
+                    if (attempt < segmentAttempts) {
+                        Thread.sleep(segmentRetryBackoffMs * attempt);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Failed to delete partial segment " + target + ": " + e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return new SegmentResult(index, null, "Segment synthesis was interrupted.", attempt);
+                }
+            }
+            return new SegmentResult(index, null, error, segmentAttempts);
+        }, synthesisExecutor);
+    }
 
-        String voiceId = voiceMap.get(voiceName);
+    /**
+     * Synthesises one speaker turn to an MP3 file.
+     * @param text The turn's text.
+     * @param speaker The script speaker, mapped to an ElevenLabs voice by the {@link VoiceRegistry}.
+     * @param target Where to write the audio.
+     * @return Whether audio was written; false if no voice was found or ElevenLabs returned an error.
+     */
+    public boolean synthesizeSegment(String text, String speaker, Path target) throws IOException {
+        String voiceId = voiceRegistry.voiceIdFor(speaker);
         if (voiceId == null) {
-            System.err.println("Voice ID not found for: " + voiceName + ". Falling back to Sarah.");
-            voiceId = voiceMap.get("Sarah");
+            System.err.println("Critical: No voice found for speaker '" + speaker + "' or the default voice.");
+            return false;
         }
-        if (voiceId == null) {
-            System.err.println("Critical: Voice ID for 'Sarah' not found in voice map.");
-            return;
+
+        ObjectNode voiceSettings = objectMapper.createObjectNode();
+        voiceSettings.put("stability", 0.5);
+        voiceSettings.put("similarity_boost", 0.75);
+
+        // Everything that shapes the audio is in the key, so a cached segment is exactly what ElevenLabs would return
+        String cacheKey = TtsSegmentCache.key(voiceId, ttsModelId, voiceSettings.toString(), text);
+        if (segmentCache.copyTo(cacheKey, target)) {
+            System.out.println("Reused cached audio: " + target);
+            return true;
         }
 
-        String url = "https://api.elevenlabs.io/v1/text-to-speech/" + voiceId;
+        String url = elevenLabsBaseUrl + "/v1/text-to-speech/" + voiceId;
         HttpPost httpPost = new HttpPost(url);
         httpPost.addHeader("xi-api-key", elevenLabsApiKey);
         httpPost.addHeader("Content-Type", "application/json");
@@ -118,71 +231,43 @@ public class ElevenLabsService {
 
         ObjectNode requestBody = objectMapper.createObjectNode();
         requestBody.put("text", text);
-        requestBody.put("model_id", "eleven_monolingual_v1");
-
-        ObjectNode voiceSettings = objectMapper.createObjectNode();
-        voiceSettings.put("stability", 0.5);
-        voiceSettings.put("similarity_boost", 0.75);
+        requestBody.put("model_id", ttsModelId);
         requestBody.set("voice_settings", voiceSettings);
 
         StringEntity entity = new StringEntity(requestBody.toString(), ContentType.APPLICATION_JSON);
         httpPost.setEntity(entity);
 
-        httpClient.execute(httpPost, response -> {
+        return elevenLabsGuard.call(() -> httpClient.execute(httpPost, response -> {
+            UpstreamGuard.throwIfRetryable(response);
             HttpEntity responseEntity = response.getEntity();
             if (responseEntity != null && response.getCode() == 200) {
-                String tempAudioFile = outputFilePath.replace(".mp3", "") + "_" + UUID.randomUUID().toString().substring(0, 8) + ".mp3";
                 try (InputStream is = responseEntity.getContent();
-                     FileOutputStream fos = new FileOutputStream(tempAudioFile)) {
-                    byte[] buffer = new byte[1024];
-                    int bytesRead;
-                    while ((bytesRead = is.read(buffer)) != -1) {
-                        fos.write(buffer, 0, bytesRead);
-                    }
-                    tempAudioPaths.add(tempAudioFile);
-                    System.out.println("Saved audio: " + tempAudioFile);
+                     OutputStream fos = Files.newOutputStream(target)) {
+                    is.transferTo(fos);
                 }
-            } else {
-                String errorBody = responseEntity != null ? EntityUtils.toString(responseEntity) : "No response body";
-                System.err.println("API error: " + response.getCode() + ", " + errorBody);
+                System.out.println("Saved audio: " + target);
+                segmentCache.put(cacheKey, target);
+                return true;
             }
-            return null;
-        });
+            String errorBody = responseEntity != null ? EntityUtils.toString(responseEntity) : "No response body";
+            System.err.println("API error: " + response.getCode() + ", " + errorBody);
+            return false;
+        }));
     }
 
-    private Map<String, String> getVoiceIdMap(CloseableHttpClient httpClient) throws IOException {
-        Map<String, String> voiceMap = new HashMap<>();
-        HttpGet httpGet = new HttpGet("https://api.elevenlabs.io/v1/voices");
-        httpGet.addHeader("xi-api-key", elevenLabsApiKey);
-
-        httpClient.execute(httpGet, response -> {
-            if (response.getCode() == 200) {
-                HttpEntity responseEntity = response.getEntity();
-                String result = EntityUtils.toString(responseEntity);
-                JsonNode root = objectMapper.readTree(result);
-                for (JsonNode voiceNode : root.get("voices")) {
-                    String name = voiceNode.get("name").asText();
-                    String id = voiceNode.get("voice_id").asText();
-                    voiceMap.put(name, id);
-                }
-            } else {
-                throw new IOException("Failed to fetch voices. Status code: " + response.getCode());
-            }
-            return null;
-        });
-        return voiceMap;
-    }
-
-    private String cleanText(String text) {
-        return text.replace("**", "")
-                .replace("#", "")
-                .replace("```", "")
-                .replaceAll("\\(Host\\)", "")
-                .replaceAll("\\(Expert\\)", "")
-                .trim();
+    /**
+     * Concatenates MP3 segments into one file, in list order. Segments in one format are joined in-process;
+     * ffmpeg is only needed when they differ.
+     */
+    public void mergeMp3Files(List<String> mp3Files, String outputMergedFilePath) throws IOException {
+        if (Mp3Concatenator.concatenate(mp3Files.stream().map(Path::of).toList(), Path.of(outputMergedFilePath))) {
+            return;
+        }
+        System.out.println("Segments differ in format, merging with ffmpeg");
+        mergeWithFfmpeg(mp3Files, outputMergedFilePath);
     }
 
-    private void mergeMp3Files(List<String> mp3Files, String outputMergedFilePath) throws IOException {
+    private void mergeWithFfmpeg(List<String> mp3Files, String outputMergedFilePath) throws IOException {
         Path tempListFile = Files.createTempFile("ffmpeg_concat_list", ".txt");
         try (BufferedWriter writer = Files.newBufferedWriter(tempListFile)) {
             for (String file : mp3Files) {
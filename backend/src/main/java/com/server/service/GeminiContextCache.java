@@ -0,0 +1,263 @@
+package com.server.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.hc.client5.http.classic.methods.HttpPatch;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gemini context caching for document text: the first prompt over a document uploads the text once as a
+ * cachedContents entry, and later prompts refer to it by name instead of resending it. Handles are tracked per
+ * content hash with their expiry, renewed when close to expiring, and recreated or skipped (the caller then
+ * sends the text inline) when anything goes wrong.
+ */
+@Service
+public class GeminiContextCache {
+
+    @Value("${gemini.api.key}")
+    private String geminiApiKey;
+
+    @Value("${gemini.api.base-url:https://generativelanguage.googleapis.com}")
+    private String geminiBaseUrl;
+
+    @Value("${gemini.context-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${gemini.context-cache.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    // Entries this close to expiry are renewed before use
+    @Value("${gemini.context-cache.renew-margin-minutes:5}")
+    private long renewMarginMinutes;
+
+    // Gemini rejects cached contents below a minimum size, and small documents gain little
+    @Value("${gemini.context-cache.min-tokens:4096}")
+    private int minTokens;
+
+    // After a failed create, documents go inline for this long before trying again
+    @Value("${gemini.context-cache.failure-backoff-minutes:10}")
+    private long failureBackoffMinutes;
+
+    // Expired handles, elapsed backoffs and the locks of documents with neither are dropped this often
+    @Value("${gemini.context-cache.sweep-minutes:5}")
+    private long sweepMinutes;
+
+    private final CloseableHttpClient httpClient;
+    private final UpstreamGuard geminiGuard;
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Handle> handles = new ConcurrentHashMap<>();
+    private final Map<String, Instant> failedUntil = new ConcurrentHashMap<>();
+    private final Map<String, Object> keyLocks = new ConcurrentHashMap<>();
+    private ScheduledExecutorService sweeper;
+
+    private record Handle(String name, Instant expiresAt) {}
+
+    @Autowired
+    public GeminiContextCache(CloseableHttpClient httpClient, @Qualifier("geminiGuard") UpstreamGuard geminiGuard, MeterRegistry meterRegistry) {
+        this.httpClient = httpClient;
+        this.geminiGuard = geminiGuard;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() {
+        meterRegistry.gauge("gemini.context-cache.entries", handles, GeminiContextCache::countLive);
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gemini-context-cache-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweepExpired, sweepMinutes, sweepMinutes, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the name of a live cached-content entry holding the given document, creating or renewing it as needed.
+     * @param model The model the entry will be used with (entries are model-specific).
+     * @param documentContent The document part of the prompt, exactly as it would otherwise be sent inline.
+     * @return The cachedContents name, or null if the caller should send the content inline.
+     */
+    public String handleFor(String model, String documentContent) {
+        if (!enabled || TextSections.estimateTokens(documentContent) < minTokens) {
+            return null;
+        }
+        String key = GeminiResponseCache.key(model, documentContent);
+        Instant backoff = failedUntil.get(key);
+        if (backoff != null) {
+            if (backoff.isAfter(Instant.now())) {
+                return null;
+            }
+            failedUntil.remove(key, backoff);
+        }
+        // One create/renew per document at a time; other documents are not held up
+        while (true) {
+            Object lock = keyLocks.computeIfAbsent(key, k -> new Object());
+            synchronized (lock) {
+                // The sweeper dropped this lock while we waited for it; take the one now in use
+                if (keyLocks.get(key) == lock) {
+                    return handleLocked(key, model, documentContent);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops handles that have expired, backoffs that have elapsed, and the locks of documents left with neither.
+     */
+    void sweepExpired() {
+        Instant now = Instant.now();
+        failedUntil.values().removeIf(until -> !until.isAfter(now));
+        for (Map.Entry<String, Object> entry : keyLocks.entrySet()) {
+            String key = entry.getKey();
+            synchronized (entry.getValue()) {
+                Handle handle = handles.get(key);
+                if (handle != null && !handle.expiresAt().isAfter(now)) {
+                    handles.remove(key, handle);
+                }
+                if (!handles.containsKey(key) && !failedUntil.containsKey(key)) {
+                    keyLocks.remove(key, entry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Called with the document's lock held.
+     */
+    private String handleLocked(String key, String model, String documentContent) {
+        Instant now = Instant.now();
+        Handle handle = handles.get(key);
+        if (handle != null && handle.expiresAt().isAfter(now.plus(Duration.ofMinutes(renewMarginMinutes)))) {
+            count("reused");
+            return handle.name();
+        }
+        if (handle != null && handle.expiresAt().isAfter(now)) {
+            Handle renewed = renew(handle);
+            if (renewed != null) {
+                handles.put(key, renewed);
+                count("renewed");
+                return renewed.name();
+            }
+        }
+        handles.remove(key);
+        Handle created = create(model, documentContent);
+        if (created == null) {
+            failedUntil.put(key, now.plus(Duration.ofMinutes(failureBackoffMinutes)));
+            count("failed");
+            return null;
+        }
+        failedUntil.remove(key);
+        handles.put(key, created);
+        count("created");
+        return created.name();
+    }
+
+    /**
+     * Forgets an entry the API no longer accepts (e.g. it expired early or was deleted), so the next use recreates it.
+     */
+    public void invalidate(String name) {
+        handles.values().removeIf(handle -> handle.name().equals(name));
+        count("invalidated");
+    }
+
+    private Handle create(String model, String documentContent) {
+        ObjectNode part = objectMapper.createObjectNode();
+        part.put("text", documentContent);
+        ObjectNode content = objectMapper.createObjectNode();
+        content.put("role", "user");
+        content.putArray("parts").add(part);
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("model", "models/" + model);
+        body.putArray("contents").add(content);
+        body.put("ttl", ttlMinutes * 60 + "s");
+
+        HttpPost httpPost = new HttpPost(geminiBaseUrl + "/v1beta/cachedContents?key=" + geminiApiKey);
+        httpPost.setEntity(new StringEntity(body.toString(), ContentType.APPLICATION_JSON));
+        return send(httpPost, "create");
+    }
+
+    private Handle renew(Handle handle) {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("ttl", ttlMinutes * 60 + "s");
+        HttpPatch httpPatch = new HttpPatch(geminiBaseUrl + "/v1beta/" + handle.name() + "?updateMask=ttl&key=" + geminiApiKey);
+        httpPatch.setEntity(new StringEntity(body.toString(), ContentType.APPLICATION_JSON));
+        return send(httpPatch, "renew");
+    }
+
+    private Handle send(ClassicHttpRequest request, String action) {
+        try {
+            return geminiGuard.call(() -> httpClient.execute(request, response -> {
+                String json = EntityUtils.toString(response.getEntity());
+                if (UpstreamGuard.isRetryableStatus(response.getCode())) {
+                    throw new UpstreamGuard.RetryableStatusException(response.getCode(), null, json);
+                }
+                if (response.getCode() != 200) {
+                    System.err.println("Failed to " + action + " Gemini context cache: " + response.getCode() + " " + json);
+                    return null;
+                }
+                JsonNode root = objectMapper.readTree(json);
+                String name = root.path("name").asText(null);
+                if (name == null) {
+                    System.err.println("Unexpected Gemini context cache response: " + json);
+                    return null;
+                }
+                return new Handle(name, parseExpiry(root.path("expireTime").asText(null)));
+            }));
+        } catch (IOException e) {
+            System.err.println("Failed to " + action + " Gemini context cache: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private Instant parseExpiry(String expireTime) {
+        if (expireTime != null) {
+            try {
+                return Instant.parse(expireTime);
+            } catch (DateTimeParseException ignored) {
+                // Fall through to the TTL we asked for
+            }
+        }
+        return Instant.now().plus(Duration.ofMinutes(ttlMinutes));
+    }
+
+    private static double countLive(Map<String, Handle> handles) {
+        Instant now = Instant.now();
+        return handles.values().stream().filter(handle -> handle.expiresAt().isAfter(now)).count();
+    }
+
+    private void count(String result) {
+        meterRegistry.counter("gemini.context-cache.requests", "result", result).increment();
+    }
+}
@@ -0,0 +1,126 @@
+package com.server.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight for Gemini calls: concurrent callers with the same prompt key share one upstream request.
+ * The request runs on its own worker, so each caller waits with its own timeout and giving up (timeout or
+ * interrupt) never cancels the shared call for the others; its result still lands in the response cache.
+ */
+@Service
+public class GeminiRequestCoalescer {
+
+    @Value("${gemini.coalesce.threads:16}")
+    private int threads;
+
+    // How long one caller waits for a shared call before returning an error on its own
+    @Value("${gemini.coalesce.wait-timeout-ms:180000}")
+    private long waitTimeoutMs;
+
+    private final Map<String, CompletableFuture<String>> inflight = new ConcurrentHashMap<>();
+    private final Counter upstreamCalls;
+    private final Counter coalescedCalls;
+    private final Counter callerTimeouts;
+    private ExecutorService executor;
+
+    @Autowired
+    public GeminiRequestCoalescer(MeterRegistry meterRegistry) {
+        this.upstreamCalls = Counter.builder("gemini.requests.upstream")
+                .description("Gemini calls actually sent upstream after coalescing")
+                .register(meterRegistry);
+        this.coalescedCalls = Counter.builder("gemini.requests.coalesced")
+                .description("Gemini calls that joined an identical call already in flight")
+                .register(meterRegistry);
+        this.callerTimeouts = Counter.builder("gemini.requests.wait-timeouts")
+                .description("Callers that stopped waiting for a shared Gemini call")
+                .register(meterRegistry);
+        Gauge.builder("gemini.requests.inflight", inflight, Map::size)
+                .description("Distinct Gemini calls currently in flight")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "gemini-call-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs the call, or joins the identical one already in flight.
+     * @param key Identifies identical calls, e.g. the response cache key.
+     * @param call Performs the upstream request; only the first caller's supplier runs.
+     * @return The shared result, or an "Error:" message if this caller's wait timed out or was interrupted.
+     */
+    public String execute(String key, Supplier<String> call) {
+        CompletableFuture<String> promise = new CompletableFuture<>();
+        CompletableFuture<String> existing = inflight.putIfAbsent(key, promise);
+        CompletableFuture<String> shared;
+        if (existing != null) {
+            coalescedCalls.increment();
+            shared = existing;
+        } else {
+            upstreamCalls.increment();
+            shared = promise;
+            try {
+                executor.execute(() -> {
+                    try {
+                        promise.complete(call.get());
+                    } catch (Throwable t) {
+                        promise.completeExceptionally(t);
+                    } finally {
+                        // Later callers start a fresh call (or hit the cache)
+                        inflight.remove(key, promise);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                inflight.remove(key, promise);
+                promise.completeExceptionally(e);
+            }
+        }
+
+        try {
+            return shared.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            callerTimeouts.increment();
+            System.err.println("Gave up waiting " + waitTimeoutMs + "ms for Gemini call " + key);
+            return "Error: Timed out waiting for Gemini API.";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Error: Gemini request was interrupted.";
+        } catch (ExecutionException e) {
+            System.err.println("Gemini call " + key + " failed: " + e.getCause());
+            return "Error: Failed to connect to Gemini API.";
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.server.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Two-tier cache of Gemini responses keyed by a hash of model and prompt: a bounded in-memory LRU with a TTL
+ * in front of a directory of response files that survives restarts. Only successful responses are stored.
+ */
+@Service
+public class GeminiResponseCache {
+
+    @Value("${gemini.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${gemini.cache.max-entries:500}")
+    private int maxEntries;
+
+    @Value("${gemini.cache.ttl-minutes:1440}")
+    private long ttlMinutes;
+
+    @Value("${gemini.cache.dir:${java.io.tmpdir}/lurnix-gemini-cache}")
+    private String cacheDirectory;
+
+    @Value("${gemini.cache.disk-ttl-hours:168}")
+    private long diskTtlHours;
+
+    private final Counter memoryHits;
+    private final Counter diskHits;
+    private final Counter misses;
+    private final Counter bypasses;
+    private final MeterRegistry meterRegistry;
+
+    private Path cacheDir;
+    private Map<String, Entry> memory;
+    private ScheduledExecutorService sweeper;
+
+    @Autowired
+    public GeminiResponseCache(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.memoryHits = lookupCounter(meterRegistry, "hit-memory");
+        this.diskHits = lookupCounter(meterRegistry, "hit-disk");
+        this.misses = lookupCounter(meterRegistry, "miss");
+        this.bypasses = lookupCounter(meterRegistry, "bypass");
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        // Access-ordered, so the eldest entry is the least recently used
+        memory = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        Gauge.builder("gemini.cache.size", this, cache -> cache.memorySize())
+                .description("Gemini responses held in memory")
+                .register(meterRegistry);
+
+        cacheDir = Paths.get(cacheDirectory).toAbsolutePath();
+        Files.createDirectories(cacheDir);
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gemini-cache-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweepDisk, 0, 1, TimeUnit.HOURS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    /**
+     * @param model The model the prompt is sent to.
+     * @param prompt The full prompt.
+     * @return The cache key for the pair.
+     */
+    public static String key(String model, String prompt) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(model.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(prompt.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Looks a response up in memory, then on disk (promoting disk hits back into memory).
+     * @param key The key from {@link #key}.
+     * @param mode How the caller wants the cache used.
+     * @return The cached response, or null if there is none or the mode skips reads.
+     */
+    public String get(String key, CacheMode mode) {
+        if (!enabled || mode != CacheMode.USE) {
+            bypasses.increment();
+            return null;
+        }
+        Instant now = Instant.now();
+        synchronized (memory) {
+            Entry entry = memory.get(key);
+            if (entry != null) {
+                if (entry.expiresAt().isAfter(now)) {
+                    memoryHits.increment();
+                    return entry.value();
+                }
+                memory.remove(key);
+            }
+        }
+        String stored = readDisk(key);
+        if (stored != null) {
+            diskHits.increment();
+            putMemory(key, stored);
+            return stored;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Stores a fresh response in both tiers. Error responses are never stored.
+     * @param key The key from {@link #key}.
+     * @param value The response text.
+     * @param mode How the caller wants the cache used.
+     */
+    public void put(String key, String value, CacheMode mode) {
+        if (!enabled || mode == CacheMode.BYPASS || !DocumentStoreService.isUsable(value)) {
+            return;
+        }
+        putMemory(key, value);
+        writeDisk(key, value);
+    }
+
+    private void putMemory(String key, String value) {
+        synchronized (memory) {
+            memory.put(key, new Entry(value, Instant.now().plus(Duration.ofMinutes(ttlMinutes))));
+        }
+    }
+
+    private int memorySize() {
+        synchronized (memory) {
+            return memory.size();
+        }
+    }
+
+    private String readDisk(String key) {
+        Path file = cacheDir.resolve(key + ".txt");
+        try {
+            FileTime modified = Files.getLastModifiedTime(file);
+            if (modified.toInstant().plus(Duration.ofHours(diskTtlHours)).isBefore(Instant.now())) {
+                Files.deleteIfExists(file);
+                return null;
+            }
+            return Files.readString(file, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.err.println("Failed to read cached Gemini response " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeDisk(String key, String value) {
+        Path file = cacheDir.resolve(key + ".txt");
+        // Write aside and move into place, so readers never see a partial response
+        Path temp = cacheDir.resolve(key + "." + UUID.randomUUID() + ".tmp");
+        try {
+            Files.writeString(temp, value, StandardCharsets.UTF_8);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Failed to cache Gemini response " + file + ": " + e.getMessage());
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // Swept later
+            }
+        }
+    }
+
+    private void sweepDisk() {
+        Instant cutoff = Instant.now().minus(Duration.ofHours(diskTtlHours));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDir)) {
+            for (Path file : files) {
+                if (Files.getLastModifiedTime(file).toInstant().isBefore(cutoff)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to sweep Gemini response cache: " + e.getMessage());
+        }
+    }
+
+    private static Counter lookupCounter(MeterRegistry registry, String result) {
+        return Counter.builder("gemini.cache.lookups")
+                .tag("result", result)
+                .description("Gemini response cache lookups by outcome")
+                .register(registry);
+    }
+
+    private record Entry(String value, Instant expiresAt) {}
+}
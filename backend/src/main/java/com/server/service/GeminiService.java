@@ -1,18 +1,37 @@
 package com.server.service;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 // Correct imports for Apache HttpClient 5.x
 import org.apache.hc.client5.http.classic.methods.HttpPost;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.HttpClients;
 import org.apache.hc.core5.http.ContentType; // Also from core5 for ContentType
 import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.apache.hc.core5.http.io.entity.StringEntity;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.gson.Gson;
@@ -24,11 +43,71 @@ public class GeminiService {
     @Value("${gemini.api.key}")
     private String geminiApiKey;
 
-    private final String GEMINI_API_URL = "https://generativelanguage.googleapis.com/v1beta/models/gemini-2.0-flash:generateContent?key=";
+    // Overridable so the client can be pointed at a local stub
+    @Value("${gemini.api.base-url:https://generativelanguage.googleapis.com}")
+    private String geminiBaseUrl;
+
+    // Documents estimated above this many tokens are generated map-reduce instead of in one prompt
+    @Value("${gemini.map-reduce.threshold-tokens:100000}")
+    private int mapReduceThresholdTokens;
+
+    @Value("${gemini.map-reduce.section-tokens:24000}")
+    private int sectionTokens;
+
+    // Section prompts in flight at once, across all documents
+    @Value("${gemini.map-reduce.concurrency:4}")
+    private int mapConcurrency;
+
+    // The model comes from the task's route, see GeminiTaskRouter
+    private static final String GEMINI_API_PATH = "/v1beta/models/%s:generateContent?key=";
+    // alt=sse makes Gemini send each partial candidate as a server-sent event
+    private static final String GEMINI_STREAM_API_PATH = "/v1beta/models/%s:streamGenerateContent?alt=sse&key=";
+    // With context caching the document goes in a cached entry in this form, and prompts point at it instead
+    private static final String DOCUMENT_CONTEXT_TEMPLATE = "Here is the text from the PDF:\n```%s```";
+    private static final String DOCUMENT_REFERENCE = "(the PDF text provided above)";
+    private static final String CONTEXT_CACHE_UNAVAILABLE = "Error: Cached document context unavailable.";
+    private static final String FINGERPRINT_PLACEHOLDER = "{document}";
+    private final Map<GeminiTask, String> promptFingerprints = new ConcurrentHashMap<>();
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final Gson gson = new Gson();
-    
-    
+    private final CloseableHttpClient httpClient;
+    private final GeminiResponseCache responseCache;
+    private final GeminiRequestCoalescer requestCoalescer;
+    private final UpstreamGuard geminiGuard;
+    private final GeminiContextCache contextCache;
+    private final GeminiTaskRouter taskRouter;
+    private ExecutorService sectionExecutor;
+
+    @Autowired
+    public GeminiService(CloseableHttpClient httpClient, GeminiResponseCache responseCache, GeminiRequestCoalescer requestCoalescer,
+                         @Qualifier("geminiGuard") UpstreamGuard geminiGuard, GeminiContextCache contextCache,
+                         GeminiTaskRouter taskRouter) {
+        // Shared pooled client, see HttpClientConfig; it is closed with the application context
+        this.httpClient = httpClient;
+        this.responseCache = responseCache;
+        this.requestCoalescer = requestCoalescer;
+        this.geminiGuard = geminiGuard;
+        this.contextCache = contextCache;
+        this.taskRouter = taskRouter;
+    }
+
+    @PostConstruct
+    void initSectionExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        sectionExecutor = Executors.newFixedThreadPool(mapConcurrency, runnable -> {
+            Thread thread = new Thread(runnable, "gemini-section-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdownSectionExecutor() {
+        if (sectionExecutor != null) {
+            sectionExecutor.shutdownNow();
+        }
+    }
+
 
     /**
      * Processes PDF text using the Gemini API to extract information and explanations.
@@ -36,8 +115,308 @@ public class GeminiService {
      * @return The response from the Gemini API.
      */
     public String processPdfWithGemini(String pdfText) {
-    	System.out.println("Calling Gemini API with URL: " + GEMINI_API_URL + geminiApiKey);
+        return processPdfWithGemini(pdfText, CacheMode.USE);
+    }
+
+    /**
+     * As {@link #processPdfWithGemini}, with explicit control over the response cache.
+     * @param cacheMode Whether to read and/or store the cached response.
+     */
+    public String processPdfWithGemini(String pdfText, CacheMode cacheMode) {
+    	System.out.println("Calling Gemini API for document analysis");
+        return generate(GeminiTask.SUMMARY, pdfText, this::summaryPrompt, cacheMode);
+    }
+
+    /**
+     * Generates a podcast script based on PDF content using the Gemini API.
+     * @param pdfText The text extracted from the PDF.
+     * @return The generated podcast script.
+     */
+    public String getPodcastScript(String pdfText) {
+        return getPodcastScript(pdfText, CacheMode.USE);
+    }
+
+    /**
+     * As {@link #getPodcastScript}, with explicit control over the response cache.
+     * @param cacheMode Whether to read and/or store the cached response.
+     */
+    public String getPodcastScript(String pdfText, CacheMode cacheMode) {
+        return generate(GeminiTask.PODCAST, pdfText, this::podcastPrompt, cacheMode);
+    }
+    /**
+     * Streaming variant of {@link #getPodcastScript}: the script is handed to the consumer as Gemini generates it,
+     * so it can be voiced before it is finished. Streamed scripts bypass the response cache.
+     * @param pdfText The text extracted from the PDF.
+     * @param onText Receives each generated text fragment, in order.
+     * @return The full script, or an "Error:" message.
+     */
+    public String streamPodcastScript(String pdfText, Consumer<String> onText) {
+        GeminiTaskRouter.Route route = taskRouter.route(GeminiTask.PODCAST);
+        String text = fitToPrompt(route, pdfText, CacheMode.USE);
+        if (text.startsWith("Error:")) {
+            return text;
+        }
+        return streamGeminiApi(route, podcastPrompt(text), onText);
+    }
+
+    public String getVideoScript(String pdfText) {
+        return getVideoScript(pdfText, CacheMode.USE);
+    }
+
+    /**
+     * As {@link #getVideoScript}, with explicit control over the response cache.
+     * @param cacheMode Whether to read and/or store the cached response.
+     */
+    public String getVideoScript(String pdfText, CacheMode cacheMode) {
+        return generate(GeminiTask.VIDEO_SCRIPT, pdfText, this::videoScriptPrompt, cacheMode);
+    }
+
+
+    /**
+     * The per-document artifacts produced by {@link #generateDocumentArtifacts}. Any field may be null
+     * if the model left it out or the response was cut off before it.
+     */
+    public record DocumentArtifacts(String subject, String summary, String quiz, String podcastScript) {}
+
+    /**
+     * Generates the summary, quiz, podcast script and video search subject in one request, so the document
+     * is sent once instead of once per artifact. The response is constrained by a JSON schema.
+     * @param pdfText The text extracted from the PDF.
+     * @return The artifacts that could be read from the response, or null if the request failed outright.
+     */
+    public DocumentArtifacts generateDocumentArtifacts(String pdfText) {
+        String response = generate(GeminiTask.ARTIFACTS, pdfText, this::artifactsPrompt, artifactsGenerationConfig(), CacheMode.USE);
+        if (response.startsWith("Error:")) {
+            System.err.println("Batched artifact generation failed: " + response);
+            return null;
+        }
+        return parseArtifacts(response);
+    }
+
+    private JsonObject artifactsGenerationConfig() {
+        JsonObject string = new JsonObject();
+        string.addProperty("type", "STRING");
+
+        JsonObject options = new JsonObject();
+        options.addProperty("type", "ARRAY");
+        options.add("items", string);
+        JsonObject answer = new JsonObject();
+        answer.addProperty("type", "INTEGER");
+        JsonObject questionProperties = new JsonObject();
+        questionProperties.add("question", string);
+        questionProperties.add("options", options);
+        questionProperties.add("answer", answer);
+        JsonObject question = new JsonObject();
+        question.addProperty("type", "OBJECT");
+        question.add("properties", questionProperties);
+        question.add("required", gson.toJsonTree(new String[]{"question", "options", "answer"}));
+        JsonObject quiz = new JsonObject();
+        quiz.addProperty("type", "ARRAY");
+        quiz.add("items", question);
+
+        JsonObject properties = new JsonObject();
+        properties.add("subject", string);
+        properties.add("summary", string);
+        properties.add("quiz", quiz);
+        properties.add("podcastScript", string);
+        JsonObject schema = new JsonObject();
+        schema.addProperty("type", "OBJECT");
+        schema.add("properties", properties);
+        String[] order = {"subject", "summary", "quiz", "podcastScript"};
+        schema.add("required", gson.toJsonTree(order));
+        // Short fields first, so a response cut off by the output limit still carries them
+        schema.add("propertyOrdering", gson.toJsonTree(order));
+
+        JsonObject config = new JsonObject();
+        config.addProperty("responseMimeType", "application/json");
+        config.addProperty("maxOutputTokens", 8192);
+        config.add("responseSchema", schema);
+        return config;
+    }
+
+    /**
+     * Reads the artifacts with a streaming parser, keeping every field completed before any syntax error,
+     * so a truncated response still yields its leading fields.
+     */
+    private DocumentArtifacts parseArtifacts(String json) {
+        String subject = null;
+        String summary = null;
+        String quiz = null;
+        String podcastScript = null;
+        try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "subject" -> subject = readText(parser, value);
+                    case "summary" -> summary = readText(parser, value);
+                    case "podcastScript" -> podcastScript = readText(parser, value);
+                    case "quiz" -> {
+                        if (value == JsonToken.START_ARRAY) {
+                            // Stored as the JSON array the quiz page already understands
+                            StringWriter quizJson = new StringWriter();
+                            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(quizJson)) {
+                                generator.copyCurrentStructure(parser);
+                            }
+                            quiz = quizJson.toString();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not fully parse batched artifacts, keeping what was read: " + e.getMessage());
+        }
+        return new DocumentArtifacts(blankToNull(subject), blankToNull(summary), quiz, blankToNull(podcastScript));
+    }
+
+    private static String readText(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_STRING) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.strip();
+    }
+
+    /**
+     * Queries the Gemini API for a chatbot response using RAG (Retrieval-Augmented Generation) context.
+     * @param prompt The chat prompt assembled by {@link ChatPromptBuilder}.
+     * @param cacheMode Whether to read and/or store the cached response.
+     * @return The chatbot's answer.
+     */
+    public String queryPdfChat(String prompt, CacheMode cacheMode) {
+        return callGeminiApi(GeminiTask.CHAT, prompt, cacheMode);
+    }
+
+    /**
+     * Streaming variant of {@link #queryPdfChat}: text is handed to the consumer as Gemini generates it.
+     * @param prompt The chat prompt assembled by {@link ChatPromptBuilder}.
+     * @param onText Receives each generated text fragment, in order. Exceptions it throws abort the stream.
+     * @return The full answer, or an "Error:" message if the stream could not be read.
+     */
+    public String streamPdfChat(String prompt, Consumer<String> onText) {
+        return streamGeminiApi(taskRouter.route(GeminiTask.CHAT), prompt, onText);
+    }
+
+    /**
+     * Folds older chat turns into the running summary of a conversation.
+     * @param previousSummary The summary so far, or null for the first fold.
+     * @param turns The turns to add, oldest first.
+     * @param maxWords The length the summary should stay within.
+     * @return The updated summary, or an "Error:" message.
+     */
+    public String summarizeConversation(String previousSummary, List<Map<String, String>> turns, int maxWords) {
+        StringBuilder turnText = new StringBuilder();
+        for (Map<String, String> turn : turns) {
+            turnText.append(turn.get("role")).append(": ").append(turn.get("content")).append("\n");
+        }
         String prompt = String.format(
+                """
+                You maintain a running summary of a tutoring conversation about a document.
+                Update the summary so it also covers the new turns. Keep the questions asked, the key facts and
+                explanations given, and anything the user said about what they know or want. Write at most %d words
+                of plain prose, with no preamble.
+
+                Summary so far:
+                %s
+
+                New turns:
+                %s
+                Updated summary:""",
+                maxWords, previousSummary == null || previousSummary.isBlank() ? "(none)" : previousSummary, turnText
+        );
+        return callGeminiApi(GeminiTask.CHAT_SUMMARY, prompt, CacheMode.USE);
+    }
+
+    /**
+     * Runs a document prompt directly, or map-reduce when the document is too long for one prompt: each
+     * section is condensed into notes in parallel, then the prompt runs over the combined notes.
+     * The section prompt is the same for every artifact, so cached section notes are shared between
+     * the summary, podcast, video script and quiz of a document.
+     * @param task The task, which decides the model and how much of the document is sent.
+     * @param documentText The full document text.
+     * @param promptFor Builds the final prompt around the given (full or condensed) text.
+     * @param cacheMode Whether to read and/or store cached responses.
+     * @return The generated text response.
+     */
+    private String generate(GeminiTask task, String documentText, Function<String, String> promptFor, CacheMode cacheMode) {
+        return generate(task, documentText, promptFor, null, cacheMode);
+    }
+
+    private String generate(GeminiTask task, String documentText, Function<String, String> promptFor, JsonObject generationConfig, CacheMode cacheMode) {
+        GeminiTaskRouter.Route route = taskRouter.route(task);
+        String text = fitToPrompt(route, documentText, cacheMode);
+        if (text.startsWith("Error:")) {
+            return text;
+        }
+        return callGeminiApiOverDocument(route, text, promptFor, generationConfig, cacheMode);
+    }
+
+    /**
+     * Applies the route's input policy, then condenses the text section by section until it fits one prompt.
+     * @return The text to build the prompt around, or an "Error:" message.
+     */
+    private String fitToPrompt(GeminiTaskRouter.Route route, String documentText, CacheMode cacheMode) {
+        String text = taskRouter.applyInputPolicy(route, documentText);
+        // Notes of a very long book may themselves need another pass
+        for (int pass = 0; pass < 3 && TextSections.estimateTokens(text) > mapReduceThresholdTokens; pass++) {
+            text = condenseSections(text, cacheMode);
+            if (text.startsWith("Error:")) {
+                return text;
+            }
+        }
+        return text;
+    }
+
+    private String condenseSections(String text, CacheMode cacheMode) {
+        List<String> sections = TextSections.split(text, sectionTokens);
+        System.out.println("Map-reduce over " + sections.size() + " sections (~" + TextSections.estimateTokens(text) + " tokens)");
+        // Regenerating an artifact should not redo the sections, only bypass skips their cache
+        CacheMode sectionMode = cacheMode == CacheMode.BYPASS ? CacheMode.BYPASS : CacheMode.USE;
+        List<CompletableFuture<String>> notes = new ArrayList<>();
+        for (int i = 0; i < sections.size(); i++) {
+            String prompt = buildSectionPrompt(sections.get(i), i + 1, sections.size());
+            notes.add(CompletableFuture.supplyAsync(() -> callGeminiApi(GeminiTask.SECTION_NOTES, prompt, sectionMode), sectionExecutor));
+        }
+
+        StringBuilder combined = new StringBuilder();
+        for (int i = 0; i < notes.size(); i++) {
+            String note = notes.get(i).join();
+            if (note.startsWith("Error:")) {
+                notes.forEach(future -> future.cancel(false));
+                return note;
+            }
+            combined.append("Section ").append(i + 1).append(" of ").append(notes.size()).append(":\n")
+                    .append(note.strip()).append("\n\n");
+        }
+        return combined.toString();
+    }
+
+    private String buildSectionPrompt(String section, int index, int total) {
+        return String.format(
+                """
+                You are condensing one section of a long educational document so it can be worked with as a whole.
+                This is section %d of %d. Write dense, well-organised notes that keep every concept, definition, fact,
+                formula, example and conclusion in the section, in the order they appear. Do not add an introduction
+                or commentary, and do not refer to other sections.
+
+                Section text:
+                ```%s```
+                """, index, total, section
+        );
+    }
+
+    private String summaryPrompt(String text) {
+        return String.format(
                 """
                 You are an expert document analyst. Analyze the text I provide from a PDF which is related to educational concepts
                 and extract all relevant information. Your task is to extract all of the content within the document and provide a comprehensive explanation of
@@ -48,18 +427,12 @@ public class GeminiService {
 
                 Here is the text from the PDF:
                 ```%s```
-                """, pdfText
+                """, text
         );
-        return callGeminiApi(prompt);
     }
 
-    /**
-     * Generates a podcast script based on PDF content using the Gemini API.
-     * @param pdfText The text extracted from the PDF.
-     * @return The generated podcast script.
-     */
-    public String getPodcastScript(String pdfText) {
-        String prompt = String.format(
+    private String podcastPrompt(String text) {
+        return String.format(
                 """
                 You are a podcast scriptwriter. Create a conversational podcast script between 'Sarah' (the host) and 'Dr. Adam' (the expert) based on the following article content:
 
@@ -74,12 +447,12 @@ public class GeminiService {
                 - Do NOT include any instructions, explanations, or formatting—**only the dialogue lines**.
 
                 Begin the script now:
-                """, pdfText
+                """, text
         );
-        return callGeminiApi(prompt);
     }
-    public String getVideoScript(String pdfText) {
-        String prompt = String.format(
+
+    private String videoScriptPrompt(String text) {
+        return String.format(
                 """
                 You are a professional video scriptwriter. Based on the following article content, generate a compelling and engaging script for an educational video. The script should be designed for a faceless video that is around 1.5 minutes long.
 
@@ -103,68 +476,144 @@ public class GeminiService {
                 Visual: [description of the visuals for this line]
 
                 Begin the script:
-                """, pdfText
+                """, text
         );
-        return callGeminiApi(prompt);
     }
 
+    private String artifactsPrompt(String text) {
+        return String.format(
+                """
+                You are an expert educator preparing study material from the document below. Produce all of the following
+                in one JSON object:
 
-    /**
-     * Queries the Gemini API for a chatbot response using RAG (Retrieval-Augmented Generation) context.
-     * @param userQuestion The user's question.
-     * @param context The retrieved context from the vector store.
-     * @param history The conversation history.
-     * @return The chatbot's answer.
-     */
-    public String queryPdfChat(String userQuestion, String context, List<Map<String, String>> history) {
-        StringBuilder historyText = new StringBuilder();
-        if (history != null) {
-            for (Map<String, String> turn : history) {
-                historyText.append(turn.get("role")).append(": ").append(turn.get("content")).append("\n");
-            }
-        }
+                - "subject": the core subject of the document as a short title that works as a YouTube search query.
+                - "summary": extract all of the content within the document and explain each element so that a beginner
+                  can understand it, organised with headings or bullet points. Prioritise clarity over exhaustive detail,
+                  but give enough detail to build a solid foundation for further learning.
+                - "quiz": 15 multiple-choice questions on the content, each with four options and the 0-based index of the
+                  correct option as "answer".
+                - "podcastScript": a conversational podcast script of about 5 minutes between 'Sarah' (the host) and
+                  'Dr. Adam' (the expert). Only the spoken dialogue lines, alternating between them, each starting with the
+                  speaker's name and a colon, e.g. "Sarah: Hello!", one line per turn. No titles, music cues, intros, outros,
+                  markdown, asterisks or speaker roles in parentheses. Sarah asks probing questions and Dr. Adam gives
+                  detailed answers based on the text.
 
-        String prompt = String.format(
-                """
-                You are an expert assistant. Use the following context from a document to answer the user's question.
+                Here is the text from the PDF:
+                ```%s```
+                """, text
+        );
+    }
 
-                Context:
-                %s
+    private String quizPrompt(String text) {
+        return "Generate a quiz with 15 multiple-choice questions based on the following content. For each question, use this JSON format: " +
+                "[ { \"question\": \"...\", \"options\": [\"...\", \"...\", \"...\", \"...\"], \"answer\": 1 }, ... ] " +
+                "Return only the JSON array. Do not include any explanation, markdown, or code block. Content: " + text;
+    }
 
-                Conversation so far:
-                %sUser: %s
+    private String subjectPrompt(String text) {
+        return "Analyze the following text and identify the core subject or topic. " +
+                "Return only the subject title without explanation:\n\n" + text;
+    }
 
-                Answer:""",
-                context, historyText.toString(), userQuestion
-        );
-        return callGeminiApi(prompt);
+    /**
+     * Identifies the prompt and model that currently produce a task's output. Stored artifacts carry the
+     * fingerprint they were generated under, so changing a prompt or re-routing a task invalidates them.
+     * @param task The task that generates the artifact.
+     * @return A hex SHA-256 over the task's model, prompt template and generation config.
+     */
+    public String promptFingerprint(GeminiTask task) {
+        return promptFingerprints.computeIfAbsent(task, t -> {
+            String template = switch (t) {
+                case SUMMARY -> summaryPrompt(FINGERPRINT_PLACEHOLDER);
+                case PODCAST -> podcastPrompt(FINGERPRINT_PLACEHOLDER);
+                case VIDEO_SCRIPT -> videoScriptPrompt(FINGERPRINT_PLACEHOLDER);
+                case QUIZ -> quizPrompt(FINGERPRINT_PLACEHOLDER);
+                case SUBJECT -> subjectPrompt(FINGERPRINT_PLACEHOLDER);
+                case ARTIFACTS -> artifactsGenerationConfig() + "\n" + artifactsPrompt(FINGERPRINT_PLACEHOLDER);
+                default -> throw new IllegalArgumentException("No stored artifact for task " + t);
+            };
+            GeminiTaskRouter.Route route = taskRouter.route(t);
+            return GeminiResponseCache.key(route.model(), route.inputPolicy() + ":" + route.inputTokens() + "\n" + template);
+        });
+    }
+
+    /**
+     * @param task The task that generates the artifact on its own.
+     * @param fingerprint The fingerprint stored with the artifact, or null if it predates fingerprints.
+     * @return Whether the artifact was produced by the current prompt, either on its own or by the batched request.
+     */
+    public boolean isCurrentFingerprint(GeminiTask task, String fingerprint) {
+        return fingerprint != null
+                && (fingerprint.equals(promptFingerprint(task)) || fingerprint.equals(promptFingerprint(GeminiTask.ARTIFACTS)));
     }
 
     /**
-     * Generic method to call the Gemini API.
+     * Generic method to call the Gemini API, going through the response cache and request coalescing.
+     * @param task The task, which decides the model the prompt is sent to.
      * @param prompt The prompt to send to the Gemini API.
+     * @param cacheMode Whether to read and/or store the cached response.
      * @return The generated text response.
      */
-    
-    private String callGeminiApi(String prompt) {
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-            HttpPost httpPost = new HttpPost(GEMINI_API_URL + geminiApiKey);
-            httpPost.addHeader("Content-Type", "application/json");
-
-            JsonObject content = new JsonObject();
-            JsonObject parts = new JsonObject();
-            parts.addProperty("text", prompt);
-            content.add("parts", gson.toJsonTree(new JsonObject[]{parts}));
+    private String callGeminiApi(GeminiTask task, String prompt, CacheMode cacheMode) {
+        GeminiTaskRouter.Route route = taskRouter.route(task);
+        return callGeminiApi(route, prompt, null, cacheMode, () -> requestGeminiApi(route, prompt, null, null));
+    }
 
-            JsonObject payload = new JsonObject();
-            payload.add("contents", gson.toJsonTree(new JsonObject[]{content}));
+    /**
+     * Runs a prompt over a document, referring to the document through Gemini's context cache when it is large
+     * enough to be cached, and sending it inline otherwise or whenever the cached entry is not accepted.
+     * Both forms share one response cache key: the inline prompt.
+     */
+    private String callGeminiApiOverDocument(GeminiTaskRouter.Route route, String documentText, Function<String, String> promptFor,
+                                             JsonObject generationConfig, CacheMode cacheMode) {
+        String inlinePrompt = promptFor.apply(documentText);
+        return callGeminiApi(route, inlinePrompt, generationConfig, cacheMode, () -> {
+            // Cached contents belong to one model, so tasks routed to different models cache separately
+            String cachedContent = contextCache.handleFor(route.model(), String.format(DOCUMENT_CONTEXT_TEMPLATE, documentText));
+            if (cachedContent != null) {
+                String response = requestGeminiApi(route, promptFor.apply(DOCUMENT_REFERENCE), generationConfig, cachedContent);
+                if (!CONTEXT_CACHE_UNAVAILABLE.equals(response)) {
+                    return response;
+                }
+                contextCache.invalidate(cachedContent);
+            }
+            return requestGeminiApi(route, inlinePrompt, generationConfig, null);
+        });
+    }
 
-            StringEntity entity = new StringEntity(payload.toString(), ContentType.APPLICATION_JSON); // Specify ContentType here
-            httpPost.setEntity(entity);
+    private String callGeminiApi(GeminiTaskRouter.Route route, String prompt, JsonObject generationConfig, CacheMode cacheMode, Supplier<String> request) {
+        long start = System.nanoTime();
+        // The model and config change the response, so both are part of the key
+        String cacheKey = GeminiResponseCache.key(route.model(), generationConfig == null ? prompt : generationConfig + "\n" + prompt);
+        String cached = responseCache.get(cacheKey, cacheMode);
+        if (cached != null) {
+            taskRouter.recordLatency(route, System.nanoTime() - start, true);
+            return cached;
+        }
+        // Identical prompts already in flight share one upstream call; whoever started it stores the result
+        String result = requestCoalescer.execute(cacheKey, () -> {
+            String response = request.get();
+            // Errors are never stored, so a failed call is retried next time
+            responseCache.put(cacheKey, response, cacheMode);
+            return response;
+        });
+        taskRouter.recordLatency(route, System.nanoTime() - start, false);
+        return result;
+    }
 
-            return httpClient.execute(httpPost, response -> {
+    private String requestGeminiApi(GeminiTaskRouter.Route route, String prompt, JsonObject generationConfig, String cachedContent) {
+        String path = String.format(GEMINI_API_PATH, route.model());
+        try {
+            // Concurrency/rate limits, retries on 429/5xx and the circuit breaker live in the guard
+            return geminiGuard.call(() -> httpClient.execute(buildRequest(path, prompt, generationConfig, cachedContent), response -> {
+                UpstreamGuard.throwIfRetryable(response);
+                if (cachedContent != null && (response.getCode() == 400 || response.getCode() == 403 || response.getCode() == 404)) {
+                    System.err.println("Gemini rejected cached content " + cachedContent + ": " + EntityUtils.toString(response.getEntity()));
+                    return CONTEXT_CACHE_UNAVAILABLE;
+                }
                 String jsonResponse = EntityUtils.toString(response.getEntity());
                 JsonNode root = objectMapper.readTree(jsonResponse);
+                recordUsage(route, root);
 
                 // Navigate to the answer in the JSON structure
                 JsonNode candidates = root.get("candidates");
@@ -182,31 +631,140 @@ public class GeminiService {
                 }
                 System.err.println("Unexpected Gemini API response structure: " + jsonResponse);
                 return "Error: Could not parse Gemini API response.";
-            });
+            }));
+        } catch (UpstreamGuard.UpstreamUnavailableException e) {
+            System.err.println("Gemini API unavailable: " + e.getMessage());
+            return "Error: Gemini API is busy or unavailable. Please try again shortly.";
         } catch (IOException e) {
             System.err.println("Error communicating with Gemini API: " + e.getMessage());
             return "Error: Failed to connect to Gemini API.";
         }
     }
+
+    /**
+     * Calls streamGenerateContent and reads the server-sent events as they arrive.
+     * @param route Where the prompt is sent.
+     * @param prompt The prompt to send to the Gemini API.
+     * @param onText Receives each text fragment as soon as its event is read.
+     * @return The concatenated response text, or an "Error:" message.
+     */
+    private String streamGeminiApi(GeminiTaskRouter.Route route, String prompt, Consumer<String> onText) {
+        String path = String.format(GEMINI_STREAM_API_PATH, route.model());
+        long start = System.nanoTime();
+        try {
+            // Only the request itself is retried; once text has been handed out a failure ends the stream
+            return geminiGuard.call(() -> httpClient.execute(buildRequest(path, prompt, null, null), response -> {
+                UpstreamGuard.throwIfRetryable(response);
+                if (response.getCode() != 200) {
+                    System.err.println("Gemini streaming request failed: " + response.getCode() + " " + EntityUtils.toString(response.getEntity()));
+                    return "Error: Gemini API returned status " + response.getCode() + ".";
+                }
+                StringBuilder answer = new StringBuilder();
+                JsonNode usage = null;
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.getEntity().getContent(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        // Each event is a single "data: {json}" line followed by a blank line
+                        if (!line.startsWith("data:")) {
+                            continue;
+                        }
+                        JsonNode event = objectMapper.readTree(line.substring(5).trim());
+                        // Every event carries the usage so far; the last one has the totals
+                        if (event.has("usageMetadata")) {
+                            usage = event;
+                        }
+                        JsonNode parts = event.path("candidates").path(0).path("content").path("parts");
+                        for (JsonNode part : parts) {
+                            String text = part.path("text").asText("");
+                            if (!text.isEmpty()) {
+                                answer.append(text);
+                                onText.accept(text);
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    System.err.println("Gemini stream broke off: " + e.getMessage());
+                    return "Error: Gemini stream was interrupted.";
+                }
+                taskRouter.recordLatency(route, System.nanoTime() - start, false);
+                if (usage != null) {
+                    recordUsage(route, usage);
+                }
+                if (answer.length() == 0) {
+                    return "Error: Gemini API returned an empty stream.";
+                }
+                return answer.toString();
+            }));
+        } catch (UpstreamGuard.UpstreamUnavailableException e) {
+            System.err.println("Gemini API unavailable: " + e.getMessage());
+            return "Error: Gemini API is busy or unavailable. Please try again shortly.";
+        } catch (IOException e) {
+            System.err.println("Error streaming from Gemini API: " + e.getMessage());
+            return "Error: Failed to connect to Gemini API.";
+        }
+    }
+
+    private void recordUsage(GeminiTaskRouter.Route route, JsonNode response) {
+        JsonNode usage = response.path("usageMetadata");
+        if (usage.isMissingNode()) {
+            return;
+        }
+        taskRouter.recordTokens(route, usage.path("promptTokenCount").asLong(),
+                usage.path("cachedContentTokenCount").asLong(), usage.path("candidatesTokenCount").asLong());
+    }
+
+    private HttpPost buildRequest(String path, String prompt, JsonObject generationConfig, String cachedContent) {
+        HttpPost httpPost = new HttpPost(geminiBaseUrl + path + geminiApiKey);
+        httpPost.addHeader("Content-Type", "application/json");
+
+        JsonObject content = new JsonObject();
+        JsonObject parts = new JsonObject();
+        parts.addProperty("text", prompt);
+        content.add("parts", gson.toJsonTree(new JsonObject[]{parts}));
+
+        JsonObject payload = new JsonObject();
+        payload.add("contents", gson.toJsonTree(new JsonObject[]{content}));
+        if (generationConfig != null) {
+            payload.add("generationConfig", generationConfig);
+        }
+        if (cachedContent != null) {
+            payload.addProperty("cachedContent", cachedContent);
+        }
+
+        StringEntity entity = new StringEntity(payload.toString(), ContentType.APPLICATION_JSON); // Specify ContentType here
+        httpPost.setEntity(entity);
+        return httpPost;
+    }
     
     public String getSubjectForYouTubeSearch(String content) {
-        try {
-            String prompt = "Analyze the following text and identify the core subject or topic. " +
-                            "Return only the subject title without explanation:\n\n" + content;
+        return getSubjectForYouTubeSearch(content, CacheMode.USE);
+    }
 
-            return callGeminiApi(prompt); // Or however you're calling Gemini
+    /**
+     * As {@link #getSubjectForYouTubeSearch}, with explicit control over the response cache.
+     * @param cacheMode Whether to read and/or store the cached response.
+     */
+    public String getSubjectForYouTubeSearch(String content, CacheMode cacheMode) {
+        try {
+            // A title only needs the start of the document by default, see gemini.tasks.subject.*
+            GeminiTaskRouter.Route route = taskRouter.route(GeminiTask.SUBJECT);
+            return callGeminiApi(GeminiTask.SUBJECT, subjectPrompt(taskRouter.applyInputPolicy(route, content)), cacheMode);
         } catch (Exception e) {
             return "Error: " + e.getMessage();
         }
     }
     
     public String generateQuizFromPdf(String content) {
-        try {
-            String prompt = "Generate a quiz with 15 multiple-choice questions based on the following content. For each question, use this JSON format: " +
-                "[ { \"question\": \"...\", \"options\": [\"...\", \"...\", \"...\", \"...\"], \"answer\": 1 }, ... ] " +
-                "Return only the JSON array. Do not include any explanation, markdown, or code block. Content: " + content;
+        return generateQuizFromPdf(content, CacheMode.USE);
+    }
 
-            String result = callGeminiApi(prompt);
+    /**
+     * As {@link #generateQuizFromPdf}, with explicit control over the response cache.
+     * @param cacheMode Whether to read and/or store the cached response.
+     */
+    public String generateQuizFromPdf(String content, CacheMode cacheMode) {
+        try {
+            String result = generate(GeminiTask.QUIZ, content, this::quizPrompt, cacheMode);
             // Remove code block markers if present
             if (result != null) {
                 result = result.trim();
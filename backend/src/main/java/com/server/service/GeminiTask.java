@@ -0,0 +1,27 @@
+package com.server.service;
+
+/**
+ * The kinds of Gemini request the app makes. Each is routed to its own model and input policy,
+ * configured under gemini.tasks.&lt;property-name&gt;.*.
+ */
+public enum GeminiTask {
+    SUMMARY("summary"),
+    PODCAST("podcast"),
+    VIDEO_SCRIPT("video-script"),
+    QUIZ("quiz"),
+    SUBJECT("subject"),
+    ARTIFACTS("artifacts"),
+    CHAT("chat"),
+    CHAT_SUMMARY("chat-summary"),
+    SECTION_NOTES("section-notes");
+
+    private final String propertyName;
+
+    GeminiTask(String propertyName) {
+        this.propertyName = propertyName;
+    }
+
+    public String getPropertyName() {
+        return propertyName;
+    }
+}
@@ -0,0 +1,126 @@
+package com.server.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maps each {@link GeminiTask} to a model and an input policy, and records latency and token usage per task
+ * so the routing can be tuned. Cheap tasks such as subject detection default to a lighter model and only
+ * the start of the document.
+ */
+@Service
+public class GeminiTaskRouter {
+
+    /**
+     * How much of the document a task gets to see.
+     */
+    public enum InputPolicy {
+        /** The whole document (map-reduced if it is over budget). */
+        FULL,
+        /** Only the first input-tokens tokens of the document. */
+        FIRST_TOKENS
+    }
+
+    public record Route(GeminiTask task, String model, InputPolicy inputPolicy, int inputTokens) {}
+
+    @Value("${gemini.model.default:gemini-2.0-flash}")
+    private String defaultModel;
+
+    private final Environment env;
+    private final MeterRegistry meterRegistry;
+    // Filled once at startup and only read afterwards, from request, ingestion and pipeline threads alike
+    private Map<GeminiTask, Route> routes;
+
+    @Autowired
+    public GeminiTaskRouter(Environment env, MeterRegistry meterRegistry) {
+        this.env = env;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() {
+        Map<GeminiTask, Route> loaded = new EnumMap<>(GeminiTask.class);
+        for (GeminiTask task : GeminiTask.values()) {
+            loaded.put(task, loadRoute(task));
+        }
+        routes = Collections.unmodifiableMap(loaded);
+    }
+
+    /**
+     * @param task The kind of request.
+     * @return Where and how to send it.
+     */
+    public Route route(GeminiTask task) {
+        return routes.get(task);
+    }
+
+    private Route loadRoute(GeminiTask task) {
+        String prefix = "gemini.tasks." + task.getPropertyName() + ".";
+        // A short title needs neither the big model nor the whole book
+        boolean light = task == GeminiTask.SUBJECT;
+        String model = env.getProperty(prefix + "model", light ? "gemini-2.0-flash-lite" : defaultModel);
+        InputPolicy policy = InputPolicy.valueOf(env.getProperty(prefix + "input", light ? "FIRST_TOKENS" : "FULL").trim().toUpperCase());
+        int inputTokens = env.getProperty(prefix + "input-tokens", Integer.class, 4000);
+        Route route = new Route(task, model, policy, inputTokens);
+        System.out.println("Gemini route for " + task + ": " + route);
+        return route;
+    }
+
+    /**
+     * @return The part of the document the route's input policy allows.
+     */
+    public String applyInputPolicy(Route route, String documentText) {
+        if (route.inputPolicy() == InputPolicy.FIRST_TOKENS) {
+            int maxChars = route.inputTokens() * TextSections.CHARS_PER_TOKEN;
+            if (documentText.length() > maxChars) {
+                return documentText.substring(0, maxChars);
+            }
+        }
+        return documentText;
+    }
+
+    /**
+     * Records one completed request.
+     * @param fromCache Whether the response came from the response cache rather than the API.
+     */
+    public void recordLatency(Route route, long nanos, boolean fromCache) {
+        Timer.builder("gemini.task.latency")
+                .tag("task", route.task().getPropertyName())
+                .tag("model", route.model())
+                .tag("source", fromCache ? "cache" : "upstream")
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the token counts Gemini reported for one request.
+     */
+    public void recordTokens(Route route, long promptTokens, long cachedTokens, long outputTokens) {
+        recordTokens(route, "prompt", promptTokens);
+        recordTokens(route, "cached", cachedTokens);
+        recordTokens(route, "output", outputTokens);
+        System.out.println("Gemini " + route.task().getPropertyName() + " on " + route.model() + ": prompt " + promptTokens
+                + " tokens (" + cachedTokens + " cached), output " + outputTokens);
+    }
+
+    private void recordTokens(Route route, String type, long tokens) {
+        DistributionSummary.builder("gemini.task.tokens")
+                .tag("task", route.task().getPropertyName())
+                .tag("model", route.model())
+                .tag("type", type)
+                .register(meterRegistry)
+                .record(tokens);
+    }
+}
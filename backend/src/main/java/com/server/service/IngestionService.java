@@ -0,0 +1,451 @@
+package com.server.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.server.dto.YouTubeSuggestions;
+import com.server.model.DocumentRecord;
+import com.server.model.IngestionJob;
+import com.server.model.User;
+import com.server.model.UserContent;
+import com.server.model.YouTubeVideo;
+import com.server.repository.UserContentRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Runs PDF ingestion in the background: extraction and indexing on one executor,
+ * Gemini/YouTube generation fanned out on another, with progress tracked in an {@link IngestionJob}.
+ */
+@Service
+public class IngestionService {
+
+    public static final String STAGE_EXTRACTION = "extraction";
+    public static final String STAGE_INDEXING = "indexing";
+    public static final String STAGE_SUMMARY = "summary";
+    public static final String STAGE_PODCAST = "podcast";
+    public static final String STAGE_SUBJECT = "subject";
+    public static final String STAGE_VIDEOS = "videos";
+
+    private final PdfExtractionService pdfExtractionService;
+    private final VectorStoreService vectorStoreService;
+    private final SessionService sessionService;
+    private final UserContentRepository userContentRepository;
+    private final YouTubeService youTubeService;
+    private final GeminiService geminiService;
+    private final DocumentAdmissionService documentAdmissionService;
+    private final DocumentStoreService documentStoreService;
+
+    @Value("${ingestion.extraction.threads:2}")
+    private int extractionThreads;
+
+    @Value("${ingestion.generation.threads:8}")
+    private int generationThreads;
+
+    // Per-stage timeouts; a stage that runs over is reported as failed and the others carry on
+    @Value("${ingestion.timeout.summary-ms:180000}")
+    private long summaryTimeoutMs;
+
+    @Value("${ingestion.timeout.podcast-ms:180000}")
+    private long podcastTimeoutMs;
+
+    @Value("${ingestion.timeout.subject-ms:60000}")
+    private long subjectTimeoutMs;
+
+    @Value("${ingestion.timeout.videos-ms:30000}")
+    private long videosTimeoutMs;
+
+    // Ask for summary, podcast, quiz and subject in one structured request; missing pieces fall back to single calls
+    @Value("${ingestion.batched-generation.enabled:true}")
+    private boolean batchedGeneration;
+
+    @Value("${ingestion.timeout.batch-ms:240000}")
+    private long batchTimeoutMs;
+
+    // Uploads waiting for an extraction worker; beyond this, uploads are turned away
+    @Value("${ingestion.queue-capacity:50}")
+    private int queueCapacity;
+
+    // Finished jobs stay queryable for this long
+    @Value("${ingestion.job-retention-minutes:60}")
+    private long jobRetentionMinutes;
+
+    private final Map<String, IngestionJob> jobs = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor extractionExecutor;
+    private ThreadPoolExecutor generationExecutor;
+    private ScheduledExecutorService jobSweeper;
+
+    @Autowired
+    public IngestionService(PdfExtractionService pdfExtractionService, VectorStoreService vectorStoreService, SessionService sessionService, UserContentRepository userContentRepository, YouTubeService youTubeService, GeminiService geminiService, DocumentAdmissionService documentAdmissionService, DocumentStoreService documentStoreService) {
+        this.pdfExtractionService = pdfExtractionService;
+        this.vectorStoreService = vectorStoreService;
+        this.sessionService = sessionService;
+        this.userContentRepository = userContentRepository;
+        this.youTubeService = youTubeService;
+        this.geminiService = geminiService;
+        this.documentAdmissionService = documentAdmissionService;
+        this.documentStoreService = documentStoreService;
+    }
+
+    @PostConstruct
+    void init() {
+        extractionExecutor = newExecutor("ingest-extract", extractionThreads, queueCapacity);
+        // Generation is queued behind extraction, so it never needs to turn work away
+        generationExecutor = newExecutor("ingest-generate", generationThreads, Integer.MAX_VALUE);
+        jobSweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ingest-job-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        jobSweeper.scheduleWithFixedDelay(this::sweepFinishedJobs, 5, 5, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        extractionExecutor.shutdownNow();
+        generationExecutor.shutdownNow();
+        jobSweeper.shutdownNow();
+    }
+
+    /**
+     * Queues a spooled upload for ingestion. The job takes ownership of the upload and closes it after extraction.
+     * @param user The uploading user.
+     * @param upload The spooled PDF.
+     * @param originalFileName The name the user uploaded the file under.
+     * @return The queued job.
+     * @throws RejectedExecutionException If the ingestion queue is full; the upload is closed in that case.
+     */
+    public IngestionJob submit(User user, UploadSpoolService.SpooledUpload upload, String originalFileName) {
+        IngestionJob job = new IngestionJob(UUID.randomUUID().toString(), UUID.randomUUID().toString(), user.getId(), originalFileName,
+                STAGE_EXTRACTION, STAGE_INDEXING, STAGE_SUMMARY, STAGE_PODCAST, STAGE_SUBJECT, STAGE_VIDEOS);
+        jobs.put(job.getJobId(), job);
+        try {
+            extractionExecutor.execute(() -> runExtraction(job, user, upload, originalFileName));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getJobId());
+            upload.close();
+            throw e;
+        }
+        return job;
+    }
+
+    /**
+     * @param jobId The job id returned by {@link #submit}.
+     * @return The job, or null if it is unknown or has expired.
+     */
+    public IngestionJob getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    private void runExtraction(IngestionJob job, User user, UploadSpoolService.SpooledUpload upload, String originalFileName) {
+        job.markRunning();
+        try {
+            DocumentRecord record;
+            try (upload) {
+                job.startStage(STAGE_EXTRACTION);
+                // Identical PDFs share one content-addressed record, so a repeat upload skips extraction entirely
+                record = documentStoreService.findByHash(upload.getSha256());
+                if (record != null) {
+                    System.out.println("Reusing stored document " + record.getId() + " for duplicate upload " + originalFileName);
+                    job.finishStage(STAGE_EXTRACTION, IngestionJob.StageState.SKIPPED, null);
+                } else {
+                    // Only a bounded number of document bytes may be parsed and OCR'd at once
+                    DocumentAdmissionService.Admission admission = documentAdmissionService.tryAdmit(upload.getSize());
+                    if (admission == null) {
+                        job.finishStage(STAGE_EXTRACTION, IngestionJob.StageState.FAILED, "Server busy");
+                        job.fail("The server is busy processing other large documents. Please try again shortly.");
+                        return;
+                    }
+                    String extractedText;
+                    try (admission) {
+                        extractedText = pdfExtractionService.extractTextFromPdf(upload.getPath().toFile());
+                    }
+                    if (extractedText.startsWith("Error:") || extractedText.startsWith("Unexpected error")) {
+                        job.finishStage(STAGE_EXTRACTION, IngestionJob.StageState.FAILED, extractedText);
+                        job.fail(extractedText);
+                        return;
+                    }
+                    record = documentStoreService.saveExtraction(upload.getSha256(), extractedText);
+                    job.finishStage(STAGE_EXTRACTION, IngestionJob.StageState.DONE, null);
+                }
+            }
+
+            job.startStage(STAGE_INDEXING);
+            // The session's store is built aside, so overlapping jobs never export each other's chunks
+            if (record.getChunkEmbeddings() == null
+                    || vectorStoreService.restoreCollection(job.getSessionId(), record.getChunkEmbeddings()).startsWith("Error:")) {
+                vectorStoreService.buildPdfVectorStore(job.getSessionId(), record.getExtractedText());
+                String chunkEmbeddings = vectorStoreService.exportCollection(job.getSessionId());
+                documentStoreService.storeChunkEmbeddings(record, chunkEmbeddings);
+            }
+            sessionService.addPdfText(job.getSessionId(), record.getExtractedText());
+            // The per-user row only references the shared record, so artifacts show up as soon as they are stored there
+            UserContent content = new UserContent();
+            content.setUser(user);
+            content.setSessionId(job.getSessionId());
+            content.setOriginalFileName(originalFileName);
+            content.setDocument(record);
+            userContentRepository.save(content);
+            job.finishStage(STAGE_INDEXING, IngestionJob.StageState.DONE, null);
+
+            DocumentRecord extracted = record;
+            runGeneration(job, extracted);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.fail("Ingestion was interrupted.");
+        } catch (Exception e) {
+            e.printStackTrace();
+            job.fail("An unexpected error occurred: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts the generation stages as a dependency graph: summary, podcast script and subject run
+     * side by side, and the video search follows the subject. Each stage has its own timeout, and a
+     * failed stage only marks itself as failed. Returns once the graph is scheduled.
+     * When several artifacts are missing, one batched request is made first and the stages only make
+     * their own calls for what it did not deliver.
+     */
+    private void runGeneration(IngestionJob job, DocumentRecord record) {
+        String extractedText = record.getExtractedText();
+        YouTubeSuggestions suggestions = isCurrent(record, GeminiTask.SUBJECT) ? youTubeService.fromStoredJson(record.getYoutube()) : null;
+        CompletableFuture<GeminiService.DocumentArtifacts> batch = startBatch(job, record, suggestions == null);
+
+        // Auto-generate summary, video suggestions, podcast script, unless the shared record already has them
+        CompletableFuture<String> summary = artifactStage(job, record, GeminiTask.SUMMARY, STAGE_SUMMARY, "summary", summaryTimeoutMs, batch,
+                GeminiService.DocumentArtifacts::summary,
+                DocumentRecord::getSummary, () -> geminiService.processPdfWithGemini(extractedText));
+        CompletableFuture<String> podcast = artifactStage(job, record, GeminiTask.PODCAST, STAGE_PODCAST, "podcastScript", podcastTimeoutMs, batch,
+                GeminiService.DocumentArtifacts::podcastScript,
+                DocumentRecord::getPodcast, () -> geminiService.getPodcastScript(extractedText));
+
+        CompletableFuture<List<YouTubeVideo>> videos;
+        if (suggestions != null) {
+            job.finishStage(STAGE_SUBJECT, IngestionJob.StageState.SKIPPED, null);
+            job.finishStage(STAGE_VIDEOS, IngestionJob.StageState.SKIPPED, null);
+            job.putResult("subject", suggestions.getSubject());
+            job.putResult("videoSuggestions", suggestions.getVideos());
+            videos = CompletableFuture.completedFuture(suggestions.getVideos());
+        } else {
+            CompletableFuture<String> subject = batchedOrStage(job, STAGE_SUBJECT, subjectTimeoutMs, batch,
+                    GeminiService.DocumentArtifacts::subject, () -> geminiService.getSubjectForYouTubeSearch(extractedText));
+            videos = subject.thenCompose(found -> {
+                if (found == null) {
+                    job.finishStage(STAGE_VIDEOS, IngestionJob.StageState.SKIPPED, "No subject to search for");
+                    return CompletableFuture.completedFuture(null);
+                }
+                job.putResult("subject", found);
+                return stage(job, STAGE_VIDEOS, videosTimeoutMs,
+                        () -> youTubeService.searchTopRelevantVideos(found, 10), list -> !list.isEmpty())
+                        .thenApply(list -> {
+                            if (list != null) {
+                                String fingerprint = fingerprintFor(GeminiTask.SUBJECT, batch, GeminiService.DocumentArtifacts::subject, found);
+                                documentStoreService.storeArtifact(record, GeminiTask.SUBJECT, youTubeService.toStoredJson(found, list), fingerprint);
+                                job.putResult("videoSuggestions", list);
+                            }
+                            return list;
+                        });
+            });
+        }
+
+        CompletableFuture.allOf(summary, podcast, videos, batch).whenComplete((ignored, error) -> {
+            if (error != null) {
+                error.printStackTrace();
+                job.fail("An unexpected error occurred: " + error.getMessage());
+            } else {
+                job.complete();
+            }
+        });
+    }
+
+    /**
+     * Starts the batched artifact request if at least two of the document's artifacts are missing.
+     * The quiz has no stage of its own, so it is stored straight from the batch.
+     * @return A future of the batch result; it completes with null if no batch ran or it failed.
+     */
+    private CompletableFuture<GeminiService.DocumentArtifacts> startBatch(IngestionJob job, DocumentRecord record, boolean subjectNeeded) {
+        List<String> missingStages = new ArrayList<>();
+        if (!isCurrent(record, GeminiTask.SUMMARY)) missingStages.add(STAGE_SUMMARY);
+        if (!isCurrent(record, GeminiTask.PODCAST)) missingStages.add(STAGE_PODCAST);
+        if (subjectNeeded) missingStages.add(STAGE_SUBJECT);
+        boolean quizMissing = !isCurrent(record, GeminiTask.QUIZ);
+        if (!batchedGeneration || missingStages.size() + (quizMissing ? 1 : 0) < 2) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // The waiting stages are in progress as far as the user is concerned
+        missingStages.forEach(job::startStage);
+        String extractedText = record.getExtractedText();
+        return generate(() -> geminiService.generateDocumentArtifacts(extractedText), batchTimeoutMs)
+                .handle((artifacts, error) -> {
+                    if (error != null) {
+                        System.err.println("Batched generation for job " + job.getJobId() + " failed, falling back to single calls: " + error);
+                        return null;
+                    }
+                    if (artifacts != null && quizMissing && DocumentStoreService.isUsable(artifacts.quiz())) {
+                        String fingerprint = geminiService.promptFingerprint(GeminiTask.ARTIFACTS);
+                        documentStoreService.storeArtifact(record, GeminiTask.QUIZ, artifacts.quiz(), fingerprint);
+                        job.putResult("quiz", artifacts.quiz());
+                    }
+                    return artifacts;
+                });
+    }
+
+    /**
+     * Publishes a stored artifact, or generates, stores and publishes it if the record doesn't have a usable one
+     * generated by the current prompt.
+     */
+    private CompletableFuture<String> artifactStage(IngestionJob job, DocumentRecord record, GeminiTask task, String stage, String resultName, long timeoutMs,
+                                                   CompletableFuture<GeminiService.DocumentArtifacts> batch, Function<GeminiService.DocumentArtifacts, String> fromBatch,
+                                                   Function<DocumentRecord, String> stored, Supplier<String> generator) {
+        String existing = stored.apply(record);
+        if (isCurrent(record, task)) {
+            job.finishStage(stage, IngestionJob.StageState.SKIPPED, null);
+            job.putResult(resultName, existing);
+            return CompletableFuture.completedFuture(existing);
+        }
+        return batchedOrStage(job, stage, timeoutMs, batch, fromBatch, generator).thenApply(generated -> {
+            if (generated != null) {
+                String fingerprint = fingerprintFor(task, batch, fromBatch, generated);
+                documentStoreService.storeArtifact(record, task, generated, fingerprint);
+                job.putResult(resultName, generated);
+            }
+            return generated;
+        });
+    }
+
+    /**
+     * Takes the stage's value from the batch result if it has a usable one, otherwise runs the stage's own call.
+     */
+    private CompletableFuture<String> batchedOrStage(IngestionJob job, String stage, long timeoutMs,
+                                                     CompletableFuture<GeminiService.DocumentArtifacts> batch,
+                                                     Function<GeminiService.DocumentArtifacts, String> fromBatch, Supplier<String> generator) {
+        return batch.thenCompose(artifacts -> {
+            String batched = artifacts != null ? fromBatch.apply(artifacts) : null;
+            if (DocumentStoreService.isUsable(batched)) {
+                job.finishStage(stage, IngestionJob.StageState.DONE, null);
+                return CompletableFuture.completedFuture(batched);
+            }
+            return stage(job, stage, timeoutMs, generator, DocumentStoreService::isUsable);
+        });
+    }
+
+    /**
+     * Runs one generation stage on the generation executor, recording its outcome on the job.
+     * @return A future of the generated value; it completes with null if the stage failed or timed out.
+     */
+    private <T> CompletableFuture<T> stage(IngestionJob job, String stage, long timeoutMs, Supplier<T> generator, Predicate<T> usable) {
+        return generate(() -> {
+                    job.startStage(stage);
+                    return generator.get();
+                }, timeoutMs)
+                .handle((value, error) -> {
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                        String message = cause instanceof TimeoutException
+                                ? "Timed out after " + timeoutMs + "ms"
+                                : "Error: " + cause.getMessage();
+                        job.finishStage(stage, IngestionJob.StageState.FAILED, message);
+                        return null;
+                    }
+                    if (value == null || !usable.test(value)) {
+                        job.finishStage(stage, IngestionJob.StageState.FAILED, value instanceof String text ? text : "No result");
+                        return null;
+                    }
+                    job.finishStage(stage, IngestionJob.StageState.DONE, null);
+                    return value;
+                });
+    }
+
+    /**
+     * Runs a task on the generation executor with a timeout, counted from when the task starts rather than
+     * from when it was queued. A task that runs over is cancelled, interrupting its worker so the worker is
+     * free for the next stage, and whatever it returns afterwards is dropped, so nothing downstream stores it.
+     * Gemini calls are shared through {@link GeminiRequestCoalescer}, which only abandons the wait: the
+     * upstream call itself runs to completion and still uses quota, and its result lands in the response cache.
+     * @return A future of the task's result; it completes with a {@link TimeoutException} if the task ran over.
+     */
+    private <T> CompletableFuture<T> generate(Supplier<T> task, long timeoutMs) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> running = generationExecutor.submit(() -> {
+            result.orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+            try {
+                result.complete(task.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result.whenComplete((value, error) -> {
+            if (error instanceof TimeoutException) {
+                running.cancel(true);
+            }
+        });
+    }
+
+    /**
+     * @return Whether the record has a usable artifact for the task, generated by the task's current prompt.
+     */
+    private boolean isCurrent(DocumentRecord record, GeminiTask task) {
+        String artifact;
+        String fingerprint;
+        switch (task) {
+            case SUMMARY -> { artifact = record.getSummary(); fingerprint = record.getSummaryFingerprint(); }
+            case PODCAST -> { artifact = record.getPodcast(); fingerprint = record.getPodcastFingerprint(); }
+            case QUIZ -> { artifact = record.getQuiz(); fingerprint = record.getQuizFingerprint(); }
+            case SUBJECT -> { artifact = record.getYoutube(); fingerprint = record.getYoutubeFingerprint(); }
+            default -> throw new IllegalArgumentException("No stored artifact for task " + task);
+        }
+        return DocumentStoreService.isUsable(artifact) && geminiService.isCurrentFingerprint(task, fingerprint);
+    }
+
+    /**
+     * @return The fingerprint of the prompt that produced a generated value: the batched prompt if it came from
+     *         the batch, otherwise the task's own. The batch has always completed by the time a stage has a value.
+     */
+    private String fingerprintFor(GeminiTask task, CompletableFuture<GeminiService.DocumentArtifacts> batch,
+                                  Function<GeminiService.DocumentArtifacts, String> fromBatch, String value) {
+        GeminiService.DocumentArtifacts artifacts = batch.getNow(null);
+        boolean batched = artifacts != null && value.equals(fromBatch.apply(artifacts));
+        return geminiService.promptFingerprint(batched ? GeminiTask.ARTIFACTS : task);
+    }
+
+    private void sweepFinishedJobs() {
+        Instant cutoff = Instant.now().minus(Duration.ofMinutes(jobRetentionMinutes));
+        jobs.values().removeIf(job -> job.getFinishedAt() != null && job.getFinishedAt().isBefore(cutoff));
+    }
+
+    private static ThreadPoolExecutor newExecutor(String name, int threads, int queueCapacity) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                queueCapacity == Integer.MAX_VALUE ? new LinkedBlockingQueue<>() : new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, name + "-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+}
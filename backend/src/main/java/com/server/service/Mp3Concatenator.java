@@ -0,0 +1,195 @@
+package com.server.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Joins MP3 files by appending their frames, without decoding. Each input's ID3v2/ID3v1 tags and its
+ * Xing/Info/VBRI header frame are skipped, since they describe that file alone, and the frames are copied
+ * with {@link FileChannel#transferTo}. Only works when every input is MPEG Layer III with the same
+ * version, sample rate and channel count, which is the case for segments from one TTS model.
+ */
+final class Mp3Concatenator {
+
+    // Frame sync is searched for within this many bytes of the end of the ID3v2 tag
+    private static final int SYNC_SEARCH_BYTES = 64 * 1024;
+    private static final int[] MPEG1_LAYER3_KBPS = {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, -1};
+    private static final int[] MPEG2_LAYER3_KBPS = {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160, -1};
+    private static final int[][] SAMPLE_RATES = {
+            {11025, 12000, 8000, -1},  // MPEG 2.5
+            {-1, -1, -1, -1},          // reserved
+            {22050, 24000, 16000, -1}, // MPEG 2
+            {44100, 48000, 32000, -1}  // MPEG 1
+    };
+
+    private Mp3Concatenator() {}
+
+    /**
+     * The properties that must match for frames of two files to be played back to back.
+     */
+    record Format(int versionId, int sampleRate, boolean mono) {}
+
+    /**
+     * The byte range of a file's audio frames, and their format.
+     */
+    record AudioRange(long start, long end, Format format) {}
+
+    /**
+     * Writes the audio frames of every input, in order, to the output file.
+     * @return Whether the inputs could be joined; false, with nothing written, if any input isn't a Layer III
+     *         file in the same format as the first.
+     */
+    static boolean concatenate(List<Path> inputs, Path output) throws IOException {
+        List<AudioRange> ranges = new ArrayList<>();
+        for (Path input : inputs) {
+            AudioRange range;
+            try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+                range = locateAudio(channel);
+            }
+            if (range == null) {
+                System.err.println("Not a Layer III MP3 file: " + input);
+                return false;
+            }
+            if (!ranges.isEmpty() && !ranges.get(0).format().equals(range.format())) {
+                System.err.println("MP3 format of " + input + " (" + range.format() + ") differs from " + ranges.get(0).format());
+                return false;
+            }
+            ranges.add(range);
+        }
+
+        try (FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int i = 0; i < inputs.size(); i++) {
+                AudioRange range = ranges.get(i);
+                try (FileChannel in = FileChannel.open(inputs.get(i), StandardOpenOption.READ)) {
+                    long position = range.start();
+                    // transferTo may move fewer bytes than asked for
+                    while (position < range.end()) {
+                        long transferred = in.transferTo(position, range.end() - position, out);
+                        if (transferred <= 0) {
+                            throw new IOException("Could not copy audio from " + inputs.get(i));
+                        }
+                        position += transferred;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a file's audio frames without its tags or VBR header, so segments can be sent back to back
+     * as one stream.
+     * @return The frames, or the whole file if no Layer III frame is found.
+     */
+    static byte[] readAudio(Path input) throws IOException {
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            AudioRange range = locateAudio(channel);
+            long start = range != null ? range.start() : 0;
+            long end = range != null ? range.end() : channel.size();
+            ByteBuffer audio = read(channel, start, (int) (end - start));
+            return audio.array();
+        }
+    }
+
+    /**
+     * Finds where a file's audio frames start and end, skipping tags and any VBR header frame.
+     * @return The range, or null if no Layer III frame is found where one is expected.
+     */
+    static AudioRange locateAudio(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long start = 0;
+        long end = size;
+
+        ByteBuffer header = read(channel, 0, 10);
+        if (header.remaining() == 10 && header.get(0) == 'I' && header.get(1) == 'D' && header.get(2) == '3') {
+            // ID3v2: 10-byte header, syncsafe size, plus a 10-byte footer if flagged
+            long tagSize = ((header.get(6) & 0x7F) << 21) | ((header.get(7) & 0x7F) << 14) | ((header.get(8) & 0x7F) << 7) | (header.get(9) & 0x7F);
+            start = 10 + tagSize + ((header.get(5) & 0x10) != 0 ? 10 : 0);
+        }
+        if (size >= 128) {
+            ByteBuffer trailer = read(channel, size - 128, 3);
+            if (trailer.remaining() == 3 && trailer.get(0) == 'T' && trailer.get(1) == 'A' && trailer.get(2) == 'G') {
+                end = size - 128;
+            }
+        }
+
+        ByteBuffer search = read(channel, start, (int) Math.min(SYNC_SEARCH_BYTES, Math.max(0, end - start)));
+        for (int offset = 0; offset + 4 <= search.limit(); offset++) {
+            Frame frame = parseFrame(search, offset);
+            if (frame == null) {
+                continue;
+            }
+            long frameStart = start + offset;
+            // A false sync in tag padding or junk is unlikely to be followed by another valid header
+            if (frameStart + frame.length() + 4 <= end) {
+                Frame next = parseFrame(read(channel, frameStart + frame.length(), 4), 0);
+                if (next == null || !next.format().equals(frame.format())) {
+                    continue;
+                }
+            }
+            if (isVbrHeader(channel, frameStart, frame)) {
+                frameStart += frame.length();
+            }
+            return new AudioRange(frameStart, end, frame.format());
+        }
+        return null;
+    }
+
+    private record Frame(Format format, int length, int sideInfoLength) {}
+
+    private static Frame parseFrame(ByteBuffer buffer, int offset) {
+        if (offset + 4 > buffer.limit()) {
+            return null;
+        }
+        int b1 = buffer.get(offset) & 0xFF;
+        int b2 = buffer.get(offset + 1) & 0xFF;
+        int b3 = buffer.get(offset + 2) & 0xFF;
+        int b4 = buffer.get(offset + 3) & 0xFF;
+        if (b1 != 0xFF || (b2 & 0xE0) != 0xE0) {
+            return null;
+        }
+        int versionId = (b2 >> 3) & 0x03;
+        int layer = (b2 >> 1) & 0x03;
+        if (versionId == 1 || layer != 1) { // reserved version, or not Layer III
+            return null;
+        }
+        boolean mpeg1 = versionId == 3;
+        int kbps = (mpeg1 ? MPEG1_LAYER3_KBPS : MPEG2_LAYER3_KBPS)[(b3 >> 4) & 0x0F];
+        int sampleRate = SAMPLE_RATES[versionId][(b3 >> 2) & 0x03];
+        if (kbps <= 0 || sampleRate < 0) { // free-format or invalid
+            return null;
+        }
+        int padding = (b3 >> 1) & 0x01;
+        boolean mono = ((b4 >> 6) & 0x03) == 3;
+        int length = (mpeg1 ? 144 : 72) * kbps * 1000 / sampleRate + padding;
+        int sideInfoLength = mpeg1 ? (mono ? 17 : 32) : (mono ? 9 : 17);
+        return new Frame(new Format(versionId, sampleRate, mono), length, sideInfoLength);
+    }
+
+    private static boolean isVbrHeader(FileChannel channel, long frameStart, Frame frame) throws IOException {
+        ByteBuffer xing = read(channel, frameStart + 4 + frame.sideInfoLength(), 4);
+        String xingTag = xing.remaining() == 4 ? StandardCharsets.US_ASCII.decode(xing).toString() : "";
+        if (xingTag.equals("Xing") || xingTag.equals("Info")) {
+            return true;
+        }
+        ByteBuffer vbri = read(channel, frameStart + 4 + 32, 4);
+        return vbri.remaining() == 4 && StandardCharsets.US_ASCII.decode(vbri).toString().equals("VBRI");
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        return buffer.flip();
+    }
+}
@@ -0,0 +1,291 @@
+package com.server.service;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Turns a PDF page into the smallest set of grayscale images worth handing to Tesseract.
+ * Embedded images are decoded at their native resolution instead of rasterising the whole page,
+ * rotated or undecodable images are rendered as crops of their bounding box, and the page is
+ * only rendered in full when a scanned page has no usable image. Resolution is chosen per region
+ * from the text line height detected in a low-resolution probe.
+ */
+class OcrImagePipeline {
+
+    /**
+     * One image to OCR.
+     * @param image The grayscale (or binarised) pixels.
+     * @param dpi The effective resolution of the pixels, passed on to Tesseract.
+     */
+    record OcrRegion(BufferedImage image, int dpi) {}
+
+    private static final int PROBE_DPI = 96;
+    private static final int DEFAULT_DPI = 300;
+    private static final int MIN_REGION_PIXELS = 32;
+
+    private final int targetLineHeightPx;
+    private final int minDpi;
+    private final int maxDpi;
+    private final double minAreaRatio;
+    private final boolean binarize;
+
+    OcrImagePipeline(int targetLineHeightPx, int minDpi, int maxDpi, double minAreaRatio, boolean binarize) {
+        this.targetLineHeightPx = targetLineHeightPx;
+        this.minDpi = minDpi;
+        this.maxDpi = maxDpi;
+        this.minAreaRatio = minAreaRatio;
+        this.binarize = binarize;
+    }
+
+    /**
+     * Prepares the OCR regions of one page, top to bottom.
+     * Callers must hold the document's lock; PDFBox objects are not thread-safe.
+     * @param document The loaded PDF document.
+     * @param renderer The renderer of that document.
+     * @param pageIndex The zero-based page index.
+     * @param fullPageFallback Whether to render the whole page when it has no usable images.
+     * @return The regions to OCR; empty if nothing on the page needs OCR.
+     */
+    List<OcrRegion> prepare(PDDocument document, PDFRenderer renderer, int pageIndex, boolean fullPageFallback) throws IOException {
+        PDPage page = document.getPage(pageIndex);
+        PDRectangle cropBox = page.getCropBox();
+        Rectangle2D pageRect = new Rectangle2D.Double(cropBox.getLowerLeftX(), cropBox.getLowerLeftY(), cropBox.getWidth(), cropBox.getHeight());
+        double minArea = pageRect.getWidth() * pageRect.getHeight() * minAreaRatio;
+        boolean rotatedPage = page.getRotation() % 360 != 0;
+
+        List<PageImageLocator.PlacedImage> placedImages = new ArrayList<>(new PageImageLocator().locate(page));
+        // Reading order: top of the page first, then left to right
+        placedImages.sort(Comparator.comparingDouble((PageImageLocator.PlacedImage placed) -> -placed.bounds().getMaxY())
+                .thenComparingDouble(placed -> placed.bounds().getMinX()));
+
+        List<OcrRegion> regions = new ArrayList<>();
+        for (PageImageLocator.PlacedImage placed : placedImages) {
+            Rectangle2D visible = placed.bounds().createIntersection(pageRect);
+            if (visible.isEmpty() || visible.getWidth() * visible.getHeight() < minArea) {
+                continue; // icons, bullets, rules
+            }
+            if (rotatedPage) {
+                // Crop maths below assume an unrotated page; let the renderer handle the rotation
+                return List.of(renderFullPage(renderer, pageIndex));
+            }
+            OcrRegion region = placed.upright() && visible.equals(placed.bounds())
+                    ? fromEmbeddedImage(placed)
+                    : null;
+            if (region == null) {
+                region = renderCrop(renderer, pageIndex, cropBox, visible);
+            }
+            if (region != null) {
+                regions.add(region);
+            }
+        }
+
+        if (regions.isEmpty() && fullPageFallback) {
+            regions.add(renderFullPage(renderer, pageIndex));
+        }
+        return regions;
+    }
+
+    /**
+     * Decodes an embedded image at native resolution, rescaled only if its text lines are far from the target height.
+     */
+    private OcrRegion fromEmbeddedImage(PageImageLocator.PlacedImage placed) {
+        BufferedImage decoded;
+        try {
+            decoded = placed.image().getImage();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not decode embedded image, rendering its region instead: " + e.getMessage());
+            return null;
+        }
+        if (decoded == null || decoded.getWidth() < MIN_REGION_PIXELS || decoded.getHeight() < MIN_REGION_PIXELS) {
+            return null;
+        }
+
+        BufferedImage gray = toGray(decoded, decoded.getWidth(), decoded.getHeight());
+        decoded.flush();
+        double nativeDpi = decoded.getWidth() / (placed.bounds().getWidth() / 72.0);
+
+        int lineHeight = estimateLineHeight(gray);
+        double scale = lineHeight > 0
+                ? (double) targetLineHeightPx / lineHeight
+                : DEFAULT_DPI / nativeDpi;
+        // Don't blow a low-resolution image up past maxDpi or shrink a fine scan below minDpi
+        scale = Math.max(minDpi / nativeDpi, Math.min(maxDpi / nativeDpi, scale));
+        if (Math.abs(scale - 1.0) > 0.15) {
+            gray = toGray(gray, (int) Math.round(gray.getWidth() * scale), (int) Math.round(gray.getHeight() * scale));
+        }
+        return new OcrRegion(finish(gray), (int) Math.round(nativeDpi * scale));
+    }
+
+    /**
+     * Renders only the given region of the page, at a resolution chosen from a low-resolution probe.
+     */
+    private OcrRegion renderCrop(PDFRenderer renderer, int pageIndex, PDRectangle cropBox, Rectangle2D region) throws IOException {
+        BufferedImage probe = renderRegion(renderer, pageIndex, cropBox, region, PROBE_DPI);
+        int dpi = dpiForLineHeight(estimateLineHeight(probe), PROBE_DPI);
+        BufferedImage image = renderRegion(renderer, pageIndex, cropBox, region, dpi);
+        if (image.getWidth() < MIN_REGION_PIXELS || image.getHeight() < MIN_REGION_PIXELS) {
+            return null;
+        }
+        return new OcrRegion(finish(image), dpi);
+    }
+
+    private OcrRegion renderFullPage(PDFRenderer renderer, int pageIndex) throws IOException {
+        BufferedImage probe = renderer.renderImageWithDPI(pageIndex, PROBE_DPI, ImageType.GRAY);
+        int dpi = dpiForLineHeight(estimateLineHeight(probe), PROBE_DPI);
+        return new OcrRegion(finish(renderer.renderImageWithDPI(pageIndex, dpi, ImageType.GRAY)), dpi);
+    }
+
+    private BufferedImage renderRegion(PDFRenderer renderer, int pageIndex, PDRectangle cropBox, Rectangle2D region, int dpi) throws IOException {
+        float scale = dpi / 72f;
+        int width = Math.max(1, (int) Math.ceil(region.getWidth() * scale));
+        int height = Math.max(1, (int) Math.ceil(region.getHeight() * scale));
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setBackground(Color.WHITE);
+            graphics.clearRect(0, 0, width, height);
+            // The renderer draws with the crop box's top-left corner at the origin
+            graphics.translate(-(region.getMinX() - cropBox.getLowerLeftX()) * scale,
+                    -(cropBox.getUpperRightY() - region.getMaxY()) * scale);
+            renderer.renderPageToGraphics(pageIndex, graphics, scale);
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    private int dpiForLineHeight(int lineHeightPx, int atDpi) {
+        if (lineHeightPx <= 0) {
+            return DEFAULT_DPI;
+        }
+        int dpi = (int) Math.round((double) atDpi * targetLineHeightPx / lineHeightPx);
+        return Math.max(minDpi, Math.min(maxDpi, dpi));
+    }
+
+    /**
+     * Estimates the typical text line height in pixels from the horizontal ink profile.
+     * @param gray A grayscale image.
+     * @return The median height of the inked row bands, or -1 if no text-like bands were found.
+     */
+    static int estimateLineHeight(BufferedImage gray) {
+        Raster raster = gray.getRaster();
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        int minInk = Math.max(1, width / 200);
+        int[] row = new int[width];
+        List<Integer> bands = new ArrayList<>();
+        int bandStart = -1;
+        for (int y = 0; y <= height; y++) {
+            boolean inked = false;
+            if (y < height) {
+                raster.getSamples(0, y, width, 1, 0, row);
+                int ink = 0;
+                for (int value : row) {
+                    if (value < 128 && ++ink >= minInk) {
+                        inked = true;
+                        break;
+                    }
+                }
+            }
+            if (inked && bandStart < 0) {
+                bandStart = y;
+            } else if (!inked && bandStart >= 0) {
+                int bandHeight = y - bandStart;
+                // Ignore speckles and solid blocks (photos, filled boxes)
+                if (bandHeight >= 3 && bandHeight < height / 4) {
+                    bands.add(bandHeight);
+                }
+                bandStart = -1;
+            }
+        }
+        if (bands.size() < 2) {
+            return -1;
+        }
+        int[] sorted = bands.stream().mapToInt(Integer::intValue).toArray();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static BufferedImage toGray(BufferedImage source, int width, int height) {
+        BufferedImage gray = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = gray.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setBackground(Color.WHITE);
+            graphics.clearRect(0, 0, gray.getWidth(), gray.getHeight());
+            graphics.drawImage(source, 0, 0, gray.getWidth(), gray.getHeight(), null);
+        } finally {
+            graphics.dispose();
+        }
+        return gray;
+    }
+
+    private BufferedImage finish(BufferedImage gray) {
+        return binarize ? binarize(gray) : gray;
+    }
+
+    /**
+     * Binarises a grayscale image in place with Otsu's global threshold.
+     */
+    private static BufferedImage binarize(BufferedImage gray) {
+        WritableRaster raster = gray.getRaster();
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        int[] histogram = new int[256];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            raster.getSamples(0, y, width, 1, 0, row);
+            for (int value : row) {
+                histogram[value]++;
+            }
+        }
+
+        long total = (long) width * height;
+        double sum = 0;
+        for (int i = 0; i < 256; i++) {
+            sum += (double) i * histogram[i];
+        }
+        double sumBackground = 0, bestVariance = -1;
+        long weightBackground = 0;
+        int threshold = 128;
+        for (int i = 0; i < 256; i++) {
+            weightBackground += histogram[i];
+            if (weightBackground == 0) continue;
+            long weightForeground = total - weightBackground;
+            if (weightForeground == 0) break;
+            sumBackground += (double) i * histogram[i];
+            double meanBackground = sumBackground / weightBackground;
+            double meanForeground = (sum - sumBackground) / weightForeground;
+            double variance = (double) weightBackground * weightForeground * Math.pow(meanBackground - meanForeground, 2);
+            if (variance > bestVariance) {
+                bestVariance = variance;
+                threshold = i;
+            }
+        }
+
+        for (int y = 0; y < height; y++) {
+            raster.getSamples(0, y, width, 1, 0, row);
+            for (int x = 0; x < width; x++) {
+                row[x] = row[x] > threshold ? 255 : 0;
+            }
+            raster.setSamples(0, y, width, 1, 0, row);
+        }
+        return gray;
+    }
+}
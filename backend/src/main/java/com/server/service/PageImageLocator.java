@@ -0,0 +1,105 @@
+package com.server.service;
+
+import org.apache.pdfbox.contentstream.PDFStreamEngine;
+import org.apache.pdfbox.contentstream.operator.DrawObject;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.state.Concatenate;
+import org.apache.pdfbox.contentstream.operator.state.Restore;
+import org.apache.pdfbox.contentstream.operator.state.Save;
+import org.apache.pdfbox.contentstream.operator.state.SetGraphicsStateParameters;
+import org.apache.pdfbox.contentstream.operator.state.SetMatrix;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.util.Matrix;
+
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Walks a page's content stream and records where each image XObject is drawn,
+ * in PDF user space (origin bottom-left, 1 unit = 1/72 inch).
+ */
+class PageImageLocator extends PDFStreamEngine {
+
+    /**
+     * An image XObject as drawn on the page.
+     * @param image The embedded image.
+     * @param bounds Its bounding box in user space.
+     * @param upright Whether it is drawn unrotated and unflipped, so its pixels can be used as-is.
+     */
+    record PlacedImage(PDImageXObject image, Rectangle2D bounds, boolean upright) {}
+
+    private final List<PlacedImage> placedImages = new ArrayList<>();
+
+    PageImageLocator() {
+        addOperator(new Concatenate());
+        addOperator(new DrawObject());
+        addOperator(new SetGraphicsStateParameters());
+        addOperator(new Save());
+        addOperator(new Restore());
+        addOperator(new SetMatrix());
+    }
+
+    /**
+     * Collects all images drawn on the page, including images nested in forms.
+     * @param page The page to scan.
+     * @return The placed images, in drawing order.
+     */
+    List<PlacedImage> locate(PDPage page) throws IOException {
+        placedImages.clear();
+        processPage(page);
+        return new ArrayList<>(placedImages);
+    }
+
+    /**
+     * Computes the fraction of the page's crop box covered by images, capped at 1.
+     * @param page The page to scan.
+     * @return The image coverage between 0 and 1.
+     */
+    double imageCoverage(PDPage page) throws IOException {
+        PDRectangle box = page.getCropBox();
+        double pageArea = (double) box.getWidth() * box.getHeight();
+        if (pageArea <= 0) {
+            return 0;
+        }
+        Rectangle2D pageRect = new Rectangle2D.Double(box.getLowerLeftX(), box.getLowerLeftY(), box.getWidth(), box.getHeight());
+        double covered = 0;
+        for (PlacedImage placed : locate(page)) {
+            Rectangle2D visible = placed.bounds().createIntersection(pageRect);
+            if (!visible.isEmpty()) {
+                covered += visible.getWidth() * visible.getHeight();
+            }
+        }
+        return Math.min(1.0, covered / pageArea);
+    }
+
+    @Override
+    protected void processOperator(Operator operator, List<COSBase> operands) throws IOException {
+        if ("Do".equals(operator.getName()) && !operands.isEmpty() && operands.get(0) instanceof COSName name) {
+            PDXObject xobject = getResources().getXObject(name);
+            if (xobject instanceof PDImageXObject image) {
+                // Images are drawn into the unit square, so the CTM maps it straight to the page
+                Matrix ctm = getGraphicsState().getCurrentTransformationMatrix();
+                Rectangle2D bounds = ctm.createAffineTransform()
+                        .createTransformedShape(new Rectangle2D.Double(0, 0, 1, 1))
+                        .getBounds2D();
+                boolean upright = ctm.getShearX() == 0 && ctm.getShearY() == 0
+                        && ctm.getScaleX() > 0 && ctm.getScaleY() > 0;
+                placedImages.add(new PlacedImage(image, bounds, upright));
+                return;
+            }
+            if (xobject instanceof PDFormXObject form) {
+                showForm(form);
+                return;
+            }
+        }
+        super.processOperator(operator, operands);
+    }
+}
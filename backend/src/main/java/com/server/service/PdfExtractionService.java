@@ -1,17 +1,38 @@
 package com.server.service;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import net.sourceforge.tess4j.ITesseract;
 import net.sourceforge.tess4j.Tesseract;
 import net.sourceforge.tess4j.TesseractException;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.DefaultResourceCache;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
 import org.apache.pdfbox.rendering.PDFRenderer;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class PdfExtractionService {
@@ -23,32 +44,116 @@ public class PdfExtractionService {
     @Value("${tesseract.language:eng}") // Default to English
     private String tesseractLanguage;
 
+    // Render + OCR pages on a worker pool instead of the request thread
+    @Value("${ocr.parallel.enabled:true}")
+    private boolean parallelOcrEnabled;
+
+    // 0 = one worker per available core
+    @Value("${ocr.worker.threads:0}")
+    private int ocrWorkerThreads;
+
+    // 0 = one Tesseract instance per worker
+    @Value("${ocr.tesseract.pool-size:0}")
+    private int tesseractPoolSize;
+
+    // Pages with fewer non-whitespace characters in their text layer are treated as scanned
+    @Value("${ocr.text-layer.min-chars:200}")
+    private int minTextLayerChars;
+
+    // Pages whose images cover at least this fraction of the page are OCR'd as well
+    @Value("${ocr.image-coverage.threshold:0.5}")
+    private double imageCoverageThreshold;
+
+    // Files at least this large are loaded with a bounded heap budget and spill to scratch files
+    @Value("${pdf.large-document.threshold-bytes:52428800}") // 50 MB
+    private long largeDocumentThresholdBytes;
+
+    @Value("${pdf.large-document.heap-bytes:67108864}") // 64 MB
+    private long perDocumentHeapBytes;
+
+    // Empty = the JVM temp directory
+    @Value("${pdf.large-document.scratch-dir:}")
+    private String scratchDirectory;
+
+    // Tesseract works best when text lines are roughly this tall in pixels
+    @Value("${ocr.target-line-height-px:40}")
+    private int targetLineHeightPx;
+
+    @Value("${ocr.dpi.min:150}")
+    private int minOcrDpi;
+
+    @Value("${ocr.dpi.max:400}")
+    private int maxOcrDpi;
+
+    // Images smaller than this fraction of the page (icons, bullets) are not OCR'd
+    @Value("${ocr.image.min-area-ratio:0.02}")
+    private double minImageAreaRatio;
+
+    @Value("${ocr.image.binarize:false}")
+    private boolean binarizeOcrImages;
+
+    private OcrImagePipeline ocrImagePipeline;
+    private ExecutorService ocrExecutor;
+    private BlockingQueue<ITesseract> tesseractPool;
+    private int workerCount;
+
+    @PostConstruct
+    void initOcrPool() {
+        ocrImagePipeline = new OcrImagePipeline(targetLineHeightPx, minOcrDpi, maxOcrDpi, minImageAreaRatio, binarizeOcrImages);
+
+        workerCount = ocrWorkerThreads > 0 ? ocrWorkerThreads : Runtime.getRuntime().availableProcessors();
+        int poolSize = tesseractPoolSize > 0 ? tesseractPoolSize : workerCount;
+
+        // Tesseract instances are not thread-safe, so each OCR call borrows one from the pool
+        tesseractPool = new ArrayBlockingQueue<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            tesseractPool.add(createTesseract());
+        }
+
+        if (parallelOcrEnabled) {
+            AtomicInteger threadIndex = new AtomicInteger();
+            ocrExecutor = Executors.newFixedThreadPool(workerCount, runnable -> {
+                Thread thread = new Thread(runnable, "ocr-worker-" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @PreDestroy
+    void shutdownOcrPool() {
+        if (ocrExecutor != null) {
+            ocrExecutor.shutdownNow();
+        }
+    }
+
     /**
-     * Extracts text from a PDF file, combining selectable text and OCR for image-based text.
+     * Extracts text from a PDF file, page by page. Pages with a good text layer use it directly;
+     * scanned and image-heavy pages are OCR'd and merged with whatever text layer they have.
      * @param pdfFile The PDF file to extract text from.
      * @return The extracted text, or an error message if extraction fails.
      */
     public String extractTextFromPdf(File pdfFile) {
-        StringBuilder extractedText = new StringBuilder();
-
-        try (PDDocument document = PDDocument.load(pdfFile)) {
-            // 1. Extract selectable text
-            PDFTextStripper pdfStripper = new PDFTextStripper();
-            extractedText.append(pdfStripper.getText(document));
+        try (PDDocument document = loadDocument(pdfFile)) {
+            // 1. Extract the selectable text of every page in one pass
+            List<String> layerTexts = extractTextLayerPages(document);
 
-            // 2. OCR for image-based text
-            ITesseract tesseract = new Tesseract();
-            tesseract.setDatapath(tesseractDataPath);   // Path to 'tessdata' folder
-            tesseract.setLanguage(tesseractLanguage);   // Set language, e.g., "eng"
+            // 2. Classify pages and OCR only the scanned or image-heavy ones
+            List<PageKind> kinds = classifyPages(document, layerTexts);
+            Map<Integer, PageKind> ocrPageKinds = new LinkedHashMap<>();
+            for (int page = 0; page < kinds.size(); page++) {
+                if (kinds.get(page) != PageKind.TEXT) {
+                    ocrPageKinds.put(page, kinds.get(page));
+                }
+            }
+            Map<Integer, String> ocrTexts = ocrPages(document, ocrPageKinds);
 
-            PDFRenderer pdfRenderer = new PDFRenderer(document);
-            for (int page = 0; page < document.getNumberOfPages(); ++page) {
-                BufferedImage image = pdfRenderer.renderImageWithDPI(page, 300); // 300 DPI = good OCR quality
-                try {
-                    String ocrText = tesseract.doOCR(image);
-                    extractedText.append("\n").append(ocrText);
-                } catch (TesseractException e) {
-                    System.err.println("OCR failed on page " + page + ": " + e.getMessage());
+            // 3. One merged text per page, in page order
+            StringBuilder extractedText = new StringBuilder();
+            for (int page = 0; page < kinds.size(); page++) {
+                String pageText = mergePageText(kinds.get(page), layerTexts.get(page), ocrTexts.get(page));
+                if (!pageText.isBlank()) {
+                    extractedText.append(pageText.strip()).append("\n\n");
                 }
             }
 
@@ -56,8 +161,248 @@ public class PdfExtractionService {
 
         } catch (IOException e) {
             return "Error: Failed to read PDF: " + e.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Error: PDF extraction was interrupted.";
         } catch (Exception e) {
             return "Unexpected error during PDF extraction: " + e.getMessage();
         }
     }
+
+    /**
+     * Loads a PDF, switching large files to a scratch-file-backed mode with a bounded heap budget.
+     * @param pdfFile The PDF file to load.
+     * @return The loaded document.
+     */
+    private PDDocument loadDocument(File pdfFile) throws IOException {
+        if (pdfFile.length() < largeDocumentThresholdBytes) {
+            return PDDocument.load(pdfFile);
+        }
+        MemoryUsageSetting memoryUsage = MemoryUsageSetting.setupMixed(perDocumentHeapBytes);
+        if (scratchDirectory != null && !scratchDirectory.isBlank()) {
+            File scratchDir = new File(scratchDirectory);
+            scratchDir.mkdirs();
+            memoryUsage.setTempDir(scratchDir);
+        }
+        System.out.println("Loading large PDF (" + pdfFile.length() + " bytes) with a " + perDocumentHeapBytes + " byte heap budget");
+        PDDocument document = PDDocument.load(pdfFile, memoryUsage);
+        // Don't keep every decoded page image alive for the life of the document
+        document.setResourceCache(new DefaultResourceCache() {
+            @Override
+            public void put(COSObject indirect, PDXObject xobject) {
+            }
+        });
+        return document;
+    }
+
+    /**
+     * Runs the text stripper once over the document, splitting its output at page boundaries.
+     * @param document The loaded PDF document.
+     * @return The text layer of each page, in page order.
+     */
+    private List<String> extractTextLayerPages(PDDocument document) throws IOException {
+        // Pages without a content stream are skipped by the stripper, so each page's text goes into its own slot
+        List<String> pages = new ArrayList<>(Collections.nCopies(document.getNumberOfPages(), ""));
+        StringWriter buffer = new StringWriter();
+        PDFTextStripper pdfStripper = new PDFTextStripper() {
+            @Override
+            protected void startPage(PDPage page) throws IOException {
+                buffer.getBuffer().setLength(0);
+                super.startPage(page);
+            }
+
+            @Override
+            protected void endPage(PDPage page) throws IOException {
+                super.endPage(page);
+                pages.set(getCurrentPageNo() - 1, buffer.toString());
+                buffer.getBuffer().setLength(0);
+            }
+        };
+        pdfStripper.writeText(document, buffer);
+        return pages;
+    }
+
+    /**
+     * Classifies every page by the density of its text layer and how much of it is covered by images.
+     * @param document The loaded PDF document.
+     * @param layerTexts The text layer of each page.
+     * @return The kind of each page, in page order.
+     */
+    private List<PageKind> classifyPages(PDDocument document, List<String> layerTexts) {
+        List<PageKind> kinds = new ArrayList<>(layerTexts.size());
+        PageImageLocator imageLocator = new PageImageLocator();
+        int scanned = 0, imageHeavy = 0;
+        for (int page = 0; page < layerTexts.size(); page++) {
+            int textChars = countNonWhitespace(layerTexts.get(page));
+            double coverage;
+            try {
+                coverage = imageLocator.imageCoverage(document.getPage(page));
+            } catch (IOException e) {
+                // Can't tell what's on the page, so let OCR have a look
+                System.err.println("Image scan failed on page " + page + ": " + e.getMessage());
+                coverage = 1.0;
+            }
+
+            PageKind kind;
+            if (textChars < minTextLayerChars) {
+                kind = PageKind.SCANNED;
+                scanned++;
+            } else if (coverage >= imageCoverageThreshold) {
+                kind = PageKind.IMAGE_HEAVY;
+                imageHeavy++;
+            } else {
+                kind = PageKind.TEXT;
+            }
+            kinds.add(kind);
+        }
+        System.out.println("Page classification: " + (kinds.size() - scanned - imageHeavy) + " text, "
+                + scanned + " scanned, " + imageHeavy + " image-heavy; OCR on " + (scanned + imageHeavy) + "/" + kinds.size() + " pages");
+        return kinds;
+    }
+
+    /**
+     * Combines the text layer and OCR output of one page.
+     * Scanned pages use the OCR text; image-heavy pages keep their text layer and add only
+     * the OCR lines it doesn't already contain.
+     */
+    private String mergePageText(PageKind kind, String layerText, String ocrText) {
+        if (kind == PageKind.TEXT || ocrText == null || ocrText.isBlank()) {
+            return layerText;
+        }
+        if (kind == PageKind.SCANNED) {
+            return ocrText;
+        }
+        String normalizedLayer = normalizeForComparison(layerText);
+        StringBuilder merged = new StringBuilder(layerText.strip());
+        for (String line : ocrText.split("\\R")) {
+            String normalizedLine = normalizeForComparison(line);
+            if (!normalizedLine.isEmpty() && !normalizedLayer.contains(normalizedLine)) {
+                merged.append("\n").append(line.strip());
+            }
+        }
+        return merged.toString();
+    }
+
+    private static String normalizeForComparison(String text) {
+        return text.toLowerCase().replaceAll("[^\\p{L}\\p{N}]+", "");
+    }
+
+    private static int countNonWhitespace(String text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Prepares and OCRs the given pages, on the worker pool when parallel OCR is enabled.
+     * @param document The loaded PDF document.
+     * @param pages The zero-based indexes of the pages to OCR, with their kind.
+     * @return The OCR text of each requested page, keyed by page index.
+     */
+    private Map<Integer, String> ocrPages(PDDocument document, Map<Integer, PageKind> pages) throws IOException, InterruptedException {
+        PDFRenderer pdfRenderer = new PDFRenderer(document);
+        List<OcrPageResult> results = new ArrayList<>(pages.size());
+        long start = System.nanoTime();
+
+        if (ocrExecutor == null) {
+            for (Map.Entry<Integer, PageKind> page : pages.entrySet()) {
+                results.add(ocrPage(document, pdfRenderer, page.getKey(), page.getValue()));
+            }
+        } else {
+            List<Future<OcrPageResult>> futures = new ArrayList<>(pages.size());
+            for (Map.Entry<Integer, PageKind> page : pages.entrySet()) {
+                futures.add(ocrExecutor.submit(() -> ocrPage(document, pdfRenderer, page.getKey(), page.getValue())));
+            }
+            try {
+                for (Future<OcrPageResult> future : futures) {
+                    results.add(future.get());
+                }
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException ioException) {
+                    throw ioException;
+                }
+                throw new IOException("OCR worker failed: " + e.getCause().getMessage(), e.getCause());
+            } finally {
+                // Don't leave pages rendering against a document that is about to be closed
+                futures.forEach(future -> future.cancel(true));
+            }
+        }
+
+        logOcrTimings(results, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        Map<Integer, String> pageTexts = new HashMap<>();
+        for (OcrPageResult result : results) {
+            pageTexts.put(result.page(), result.text());
+        }
+        return pageTexts;
+    }
+
+    private OcrPageResult ocrPage(PDDocument document, PDFRenderer pdfRenderer, int page, PageKind kind) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        List<OcrImagePipeline.OcrRegion> regions;
+        // PDFBox does not support reading or rendering one document from several threads at once
+        synchronized (document) {
+            // Image-heavy pages already have a text layer, so only their images need OCR
+            regions = ocrImagePipeline.prepare(document, pdfRenderer, page, kind == PageKind.SCANNED);
+        }
+        long prepared = System.nanoTime();
+
+        ITesseract tesseract = tesseractPool.take();
+        long acquired = System.nanoTime();
+        StringBuilder ocrText = new StringBuilder();
+        try {
+            for (OcrImagePipeline.OcrRegion region : regions) {
+                tesseract.setVariable("user_defined_dpi", String.valueOf(region.dpi()));
+                try {
+                    ocrText.append(tesseract.doOCR(region.image())).append("\n");
+                } catch (TesseractException e) {
+                    System.err.println("OCR failed on page " + page + ": " + e.getMessage());
+                }
+            }
+        } finally {
+            tesseractPool.put(tesseract);
+        }
+        long finished = System.nanoTime();
+
+        return new OcrPageResult(page, ocrText.toString(), regions.size(),
+                TimeUnit.NANOSECONDS.toMillis(prepared - start),
+                TimeUnit.NANOSECONDS.toMillis(acquired - prepared),
+                TimeUnit.NANOSECONDS.toMillis(finished - acquired));
+    }
+
+    private void logOcrTimings(List<OcrPageResult> results, long wallMs) {
+        if (results.isEmpty()) {
+            return;
+        }
+        long prepareTotal = 0, waitTotal = 0, ocrTotal = 0, ocrMax = 0;
+        for (OcrPageResult result : results) {
+            System.out.println("OCR page " + result.page() + ": regions=" + result.regions() + ", prepare=" + result.prepareMs() + "ms, wait="
+                    + result.waitMs() + "ms, ocr=" + result.ocrMs() + "ms");
+            prepareTotal += result.prepareMs();
+            waitTotal += result.waitMs();
+            ocrTotal += result.ocrMs();
+            ocrMax = Math.max(ocrMax, result.ocrMs());
+        }
+        int pages = results.size();
+        System.out.println("OCR of " + pages + " pages took " + wallMs + "ms on "
+                + (ocrExecutor != null ? workerCount + " workers" : "the request thread")
+                + " (Tesseract pool=" + (tesseractPool.size() + tesseractPool.remainingCapacity())
+                + ", avg prepare=" + prepareTotal / pages + "ms, avg ocr=" + ocrTotal / pages + "ms, max ocr=" + ocrMax
+                + "ms, total pool wait=" + waitTotal + "ms)");
+    }
+
+    private ITesseract createTesseract() {
+        ITesseract tesseract = new Tesseract();
+        tesseract.setDatapath(tesseractDataPath);   // Path to 'tessdata' folder
+        tesseract.setLanguage(tesseractLanguage);   // Set language, e.g., "eng"
+        return tesseract;
+    }
+
+    private enum PageKind { TEXT, SCANNED, IMAGE_HEAVY }
+
+    private record OcrPageResult(int page, String text, int regions, long prepareMs, long waitMs, long ocrMs) {}
 }
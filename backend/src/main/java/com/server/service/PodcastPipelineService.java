@@ -0,0 +1,248 @@
+package com.server.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.server.model.PodcastJob;
+import com.server.model.UserContent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Produces a podcast end to end: the script is streamed from Gemini and cut into speaker turns as it arrives,
+ * and every completed turn is handed to text-to-speech straight away, so audio is produced while the rest of
+ * the script is still being written. Progress is tracked in a {@link PodcastJob}.
+ */
+@Service
+public class PodcastPipelineService {
+
+    private final GeminiService geminiService;
+    private final ElevenLabsService elevenLabsService;
+    private final ArtifactService artifactService;
+    private final VoiceRegistry voiceRegistry;
+    private final MeterRegistry meterRegistry;
+
+    // Podcasts whose scripts are produced at once
+    @Value("${podcast.pipeline.threads:4}")
+    private int pipelineThreads;
+
+    // Final podcasts are kept here for replay; segments live in a directory per podcast until the job expires
+    @Value("${podcast.audio.dir:temp/podcasts}")
+    private String audioDirectory;
+
+    @Value("${podcast.job-retention-minutes:60}")
+    private long jobRetentionMinutes;
+
+    private final Map<String, PodcastJob> jobs = new ConcurrentHashMap<>();
+    private Path audioDir;
+    private ExecutorService pipelineExecutor;
+    private ScheduledExecutorService jobSweeper;
+
+    @Autowired
+    public PodcastPipelineService(GeminiService geminiService, ElevenLabsService elevenLabsService, ArtifactService artifactService,
+                                  VoiceRegistry voiceRegistry, MeterRegistry meterRegistry) {
+        this.geminiService = geminiService;
+        this.elevenLabsService = elevenLabsService;
+        this.artifactService = artifactService;
+        this.voiceRegistry = voiceRegistry;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        audioDir = Paths.get(audioDirectory).toAbsolutePath();
+        Files.createDirectories(audioDir);
+        pipelineExecutor = newExecutor("podcast-pipeline", pipelineThreads);
+        jobSweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "podcast-job-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        jobSweeper.scheduleWithFixedDelay(this::sweepFinishedJobs, 5, 5, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pipelineExecutor.shutdownNow();
+        jobSweeper.shutdownNow();
+    }
+
+    /**
+     * Starts producing a podcast for a session. The stored script is voiced if it is current; otherwise a new
+     * one is streamed from Gemini and stored once complete.
+     * @param content The session's content row.
+     * @param userId The requesting user.
+     * @param regenerate Whether to write a new script even if a current one is stored.
+     * @return The started job.
+     * @throws RejectedExecutionException If the pipeline cannot take more work.
+     */
+    public PodcastJob start(UserContent content, Long userId, boolean regenerate) {
+        PodcastJob job = new PodcastJob(UUID.randomUUID().toString(), content.getSessionId(), userId);
+        // Read while the request's persistence context is open; the shared document is loaded lazily
+        String documentText = content.getExtractedText();
+        String storedScript = regenerate ? null : artifactService.findCurrent(content, ArtifactService.Artifact.PODCAST);
+        jobs.put(job.getPodcastId(), job);
+        try {
+            pipelineExecutor.execute(() -> run(job, content, documentText, storedScript));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getPodcastId());
+            throw e;
+        }
+        return job;
+    }
+
+    /**
+     * @param podcastId The id returned by {@link #start}.
+     * @return The job, or null if it is unknown or has expired.
+     */
+    public PodcastJob getJob(String podcastId) {
+        return jobs.get(podcastId);
+    }
+
+    /**
+     * Reads a finished segment's audio for streaming, without the tags and header frame that only describe
+     * the segment file, so consecutive segments play as one MP3 stream.
+     * @param job The podcast.
+     * @param index The segment, which must have finished successfully.
+     * @return The segment's audio frames.
+     * @throws IOException If the segment has no audio or cannot be read.
+     */
+    public byte[] readSegmentAudio(PodcastJob job, int index) throws IOException {
+        Path path = job.getSegmentPath(index);
+        if (path == null) {
+            throw new IOException("Segment " + index + " of podcast " + job.getPodcastId() + " has no audio");
+        }
+        return Mp3Concatenator.readAudio(path);
+    }
+
+    private void run(PodcastJob job, UserContent content, String documentText, String storedScript) {
+        job.markRunning();
+        try {
+            Path segmentDir = Files.createDirectories(audioDir.resolve(job.getPodcastId()));
+
+            // Turns are queued for synthesis as the parser completes them and voiced concurrently, up to
+            // ElevenLabsService's limit; each keeps its index, so the merge order doesn't depend on finishing order
+            List<CompletableFuture<Void>> synthesis = new ArrayList<>();
+            ScriptTurnParser parser = new ScriptTurnParser(voiceRegistry.getSpeakers(), (speaker, text) -> {
+                int index = job.addSegment(speaker, text);
+                synthesis.add(elevenLabsService.synthesizeSegmentAsync(index, text, speaker,
+                                segmentDir.resolve(String.format("segment_%04d.mp3", index)), () -> job.startSegment(index))
+                        .thenAccept(result -> recordSegment(job, result)));
+            });
+
+            if (storedScript != null) {
+                parser.accept(storedScript);
+            } else {
+                String script = geminiService.streamPodcastScript(documentText, parser::accept);
+                if (script.startsWith("Error:")) {
+                    // Segments already queued are left to finish, but the podcast is incomplete
+                    job.fail(script);
+                    return;
+                }
+                artifactService.store(content, ArtifactService.Artifact.PODCAST, script);
+            }
+            parser.finish();
+            job.finishScript();
+
+            CompletableFuture.allOf(synthesis.toArray(new CompletableFuture[0])).whenComplete((ignored, error) -> finish(job, error));
+        } catch (IOException e) {
+            System.err.println("Failed to prepare podcast " + job.getPodcastId() + ": " + e.getMessage());
+            job.fail("Error: Failed to store the podcast audio.");
+        } catch (Exception e) {
+            e.printStackTrace();
+            job.fail("An unexpected error occurred: " + e.getMessage());
+        }
+    }
+
+    private void recordSegment(PodcastJob job, ElevenLabsService.SegmentResult result) {
+        if (result.path() == null) {
+            System.err.println("Segment " + result.index() + " of podcast " + job.getPodcastId() + " failed: " + result.error());
+            job.failSegment(result.index(), result.error(), result.attempts());
+        } else if (job.finishSegment(result.index(), result.path(), result.attempts())) {
+            Timer.builder("podcast.first-segment").register(meterRegistry)
+                    .record(Duration.between(job.getCreatedAt(), Instant.now()));
+        }
+    }
+
+    private void finish(PodcastJob job, Throwable error) {
+        if (error != null) {
+            error.printStackTrace();
+            job.fail("An unexpected error occurred: " + error.getMessage());
+            return;
+        }
+        List<Path> segments = job.getFinishedSegmentPaths();
+        if (segments.isEmpty()) {
+            job.fail("No audio segments were generated.");
+            return;
+        }
+        Path output = audioDir.resolve("podcast_" + job.getPodcastId() + ".mp3");
+        try {
+            elevenLabsService.mergeMp3Files(segments.stream().map(Path::toString).collect(Collectors.toList()), output.toString());
+            System.out.println("Podcast " + job.getPodcastId() + " saved to: " + output);
+            job.complete(output);
+        } catch (IOException e) {
+            System.err.println("Failed to merge podcast " + job.getPodcastId() + ": " + e.getMessage());
+            job.fail("Error: Failed to merge the podcast audio.");
+        }
+    }
+
+    private void sweepFinishedJobs() {
+        Instant cutoff = Instant.now().minus(Duration.ofMinutes(jobRetentionMinutes));
+        jobs.values().removeIf(job -> {
+            if (job.getFinishedAt() == null || !job.getFinishedAt().isBefore(cutoff)) {
+                return false;
+            }
+            // The merged file stays for replay; the segments are only needed while the job is queryable
+            deleteDirectory(audioDir.resolve(job.getPodcastId()));
+            return true;
+        });
+    }
+
+    private static void deleteDirectory(Path dir) {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(dir);
+        } catch (IOException e) {
+            System.err.println("Failed to delete podcast segments in " + dir + ": " + e.getMessage());
+        }
+    }
+
+    private static ExecutorService newExecutor(String name, int threads) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,92 @@
+package com.server.service;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Cuts a podcast script into speaker turns as its text arrives. Text is fed in arbitrary fragments,
+ * e.g. as Gemini streams it, and each turn is handed on as soon as the next speaker's line shows it is complete.
+ * A turn starts with a line "Speaker: text" for one of the configured speakers, see {@link VoiceRegistry#getSpeakers()}.
+ * Not thread-safe; one parser is fed by one thread.
+ */
+public class ScriptTurnParser {
+
+    private final List<String> speakers;
+    private final BiConsumer<String, String> onTurn;
+    private final StringBuilder pendingLine = new StringBuilder();
+    private final StringBuilder currentText = new StringBuilder();
+    private String currentSpeaker;
+
+    /**
+     * @param speakers The speaker names that start a turn, matched case-insensitively.
+     * @param onTurn Receives the speaker and text of each completed turn, in script order.
+     */
+    public ScriptTurnParser(List<String> speakers, BiConsumer<String, String> onTurn) {
+        this.speakers = List.copyOf(speakers);
+        this.onTurn = onTurn;
+    }
+
+    /**
+     * Feeds the next fragment of the script. Only complete lines are parsed; the rest waits for more text.
+     */
+    public void accept(String fragment) {
+        pendingLine.append(fragment);
+        int newline;
+        while ((newline = pendingLine.indexOf("\n")) >= 0) {
+            String line = pendingLine.substring(0, newline);
+            pendingLine.delete(0, newline + 1);
+            acceptLine(line);
+        }
+    }
+
+    /**
+     * Parses whatever is left and hands on the last turn. Call once the script is complete.
+     */
+    public void finish() {
+        if (pendingLine.length() > 0) {
+            acceptLine(pendingLine.toString());
+            pendingLine.setLength(0);
+        }
+        emitCurrentTurn();
+    }
+
+    private void acceptLine(String rawLine) {
+        String line = cleanText(rawLine);
+        if (line.isEmpty()) {
+            return;
+        }
+        String newSpeaker = null;
+        String lineText = line;
+        for (String speaker : speakers) {
+            if (line.toLowerCase().startsWith(speaker.toLowerCase() + ":")) {
+                newSpeaker = speaker;
+                lineText = line.substring(speaker.length() + 1).trim();
+                break;
+            }
+        }
+
+        if (newSpeaker != null) {
+            // A new speaker line means the previous turn is complete
+            emitCurrentTurn();
+            currentSpeaker = newSpeaker;
+        }
+        currentText.append(lineText).append(" ");
+    }
+
+    private void emitCurrentTurn() {
+        // Text before the first speaker line has nobody to say it
+        if (currentSpeaker != null && !currentText.toString().isBlank()) {
+            onTurn.accept(currentSpeaker, currentText.toString().trim());
+        }
+        currentText.setLength(0);
+    }
+
+    static String cleanText(String text) {
+        return text.replace("**", "")
+                .replace("#", "")
+                .replace("```", "")
+                .replaceAll("\\(Host\\)", "")
+                .replaceAll("\\(Expert\\)", "")
+                .trim();
+    }
+}
@@ -0,0 +1,97 @@
+package com.server.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits document text into sections that each fit a token budget, breaking at paragraph boundaries
+ * where possible, then at sentence ends, and only as a last resort mid-sentence.
+ */
+final class TextSections {
+
+    // Rough average for English prose; good enough for budgeting, not for billing
+    static final int CHARS_PER_TOKEN = 4;
+
+    private TextSections() {
+    }
+
+    /**
+     * @param text Any text.
+     * @return An estimate of the number of model tokens in the text.
+     */
+    static int estimateTokens(String text) {
+        return text == null ? 0 : (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    /**
+     * @param text The text to split.
+     * @param maxTokens The estimated token budget per section.
+     * @return The sections in document order; a single section if the text already fits.
+     */
+    static List<String> split(String text, int maxTokens) {
+        int maxChars = Math.max(1, maxTokens) * CHARS_PER_TOKEN;
+        List<String> sections = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String paragraph : text.split("\\n\\s*\\n")) {
+            if (paragraph.isBlank()) {
+                continue;
+            }
+            if (current.length() > 0 && current.length() + 2 + paragraph.length() > maxChars) {
+                sections.add(current.toString());
+                current.setLength(0);
+            }
+            if (paragraph.length() > maxChars) {
+                // A single paragraph over budget: cut it up on its own
+                for (String piece : splitParagraph(paragraph, maxChars)) {
+                    if (current.length() > 0 && current.length() + 1 + piece.length() > maxChars) {
+                        sections.add(current.toString());
+                        current.setLength(0);
+                    }
+                    if (current.length() > 0) {
+                        current.append(' ');
+                    }
+                    current.append(piece);
+                }
+                continue;
+            }
+            if (current.length() > 0) {
+                current.append("\n\n");
+            }
+            current.append(paragraph.strip());
+        }
+        if (current.length() > 0) {
+            sections.add(current.toString());
+        }
+        return sections;
+    }
+
+    private static List<String> splitParagraph(String paragraph, int maxChars) {
+        List<String> pieces = new ArrayList<>();
+        int start = 0;
+        while (start < paragraph.length()) {
+            int end = Math.min(paragraph.length(), start + maxChars);
+            if (end < paragraph.length()) {
+                int sentenceEnd = lastSentenceEnd(paragraph, start, end);
+                if (sentenceEnd > start) {
+                    end = sentenceEnd;
+                }
+            }
+            String piece = paragraph.substring(start, end).strip();
+            if (!piece.isEmpty()) {
+                pieces.add(piece);
+            }
+            start = end;
+        }
+        return pieces;
+    }
+
+    private static int lastSentenceEnd(String text, int start, int end) {
+        for (int i = end - 1; i > start + (end - start) / 2; i--) {
+            char c = text.charAt(i);
+            if ((c == '.' || c == '?' || c == '!') && i + 1 < text.length() && Character.isWhitespace(text.charAt(i + 1))) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+}
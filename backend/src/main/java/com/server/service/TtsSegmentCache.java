@@ -0,0 +1,238 @@
+package com.server.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Disk cache of synthesised speech segments keyed by a hash of everything that shapes the audio: voice,
+ * model, voice settings and text. Identical turns across regenerated podcasts are billed once.
+ * The directory is bounded in bytes and evicts least recently used segments.
+ */
+@Service
+public class TtsSegmentCache {
+
+    @Value("${tts.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${tts.cache.dir:${java.io.tmpdir}/lurnix-tts-cache}")
+    private String cacheDirectory;
+
+    @Value("${tts.cache.max-bytes:1073741824}") // 1 GB
+    private long maxBytes;
+
+    private final MeterRegistry meterRegistry;
+    private final Counter hits;
+    private final Counter misses;
+
+    private Path cacheDir;
+    // Access-ordered key to file size, so the eldest entry is the least recently used
+    private final Map<String, Long> index = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+
+    @Autowired
+    public TtsSegmentCache(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.hits = lookupCounter(meterRegistry, "hit");
+        this.misses = lookupCounter(meterRegistry, "miss");
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        cacheDir = Paths.get(cacheDirectory).toAbsolutePath();
+        Files.createDirectories(cacheDir);
+        loadIndex();
+        Gauge.builder("tts.cache.bytes", this, cache -> cache.getTotalBytes())
+                .description("Bytes of speech segments held in the TTS cache")
+                .register(meterRegistry);
+        Gauge.builder("tts.cache.hit-ratio", this, cache -> cache.hitRatio())
+                .description("Share of TTS cache lookups served from the cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return The cache key for one synthesis request.
+     */
+    public static String key(String voiceId, String modelId, String voiceSettings, String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : new String[]{voiceId, modelId, voiceSettings, text}) {
+                digest.update(part.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Copies a cached segment to the target path.
+     * @param key The key from {@link #key}.
+     * @param target Where the segment is wanted.
+     * @return Whether the segment was cached and copied.
+     */
+    public boolean copyTo(String key, Path target) {
+        if (!enabled) {
+            return false;
+        }
+        synchronized (index) {
+            if (index.get(key) == null) {
+                misses.increment();
+                return false;
+            }
+        }
+        Path file = cacheDir.resolve(key + ".mp3");
+        try {
+            Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+            // Recency survives restarts through the modification time
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            hits.increment();
+            return true;
+        } catch (NoSuchFileException e) {
+            forget(key);
+        } catch (IOException e) {
+            System.err.println("Failed to read cached TTS segment " + file + ": " + e.getMessage());
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * Stores a freshly synthesised segment, evicting the least recently used ones if the cache is over its size.
+     * @param key The key from {@link #key}.
+     * @param source The segment's audio; it is copied, not moved.
+     */
+    public void put(String key, Path source) {
+        if (!enabled) {
+            return;
+        }
+        Path file = cacheDir.resolve(key + ".mp3");
+        // Copy aside and move into place, so readers never see a partial segment
+        Path temp = cacheDir.resolve(key + "." + UUID.randomUUID() + ".tmp");
+        try {
+            Files.copy(source, temp);
+            long size = Files.size(temp);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            List<String> evicted;
+            synchronized (index) {
+                Long previous = index.put(key, size);
+                totalBytes += size - (previous != null ? previous : 0);
+                evicted = evictOverflow();
+            }
+            for (String evictedKey : evicted) {
+                Files.deleteIfExists(cacheDir.resolve(evictedKey + ".mp3"));
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to cache TTS segment " + file + ": " + e.getMessage());
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // Cleared on the next start
+            }
+        }
+    }
+
+    public long getTotalBytes() {
+        synchronized (index) {
+            return totalBytes;
+        }
+    }
+
+    private double hitRatio() {
+        double lookups = hits.count() + misses.count();
+        return lookups == 0 ? 0 : hits.count() / lookups;
+    }
+
+    /**
+     * Called with the index lock held.
+     * @return The keys whose files should be deleted.
+     */
+    private List<String> evictOverflow() {
+        List<String> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> eldest = index.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            totalBytes -= entry.getValue();
+            evicted.add(entry.getKey());
+            eldest.remove();
+        }
+        return evicted;
+    }
+
+    private void forget(String key) {
+        synchronized (index) {
+            Long size = index.remove(key);
+            if (size != null) {
+                totalBytes -= size;
+            }
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().endsWith(".tmp")) {
+                    Files.deleteIfExists(file); // left by a write that never finished
+                } else if (file.getFileName().toString().endsWith(".mp3")) {
+                    segments.add(file);
+                }
+            }
+        }
+        // Oldest first, so insertion order matches recency
+        segments.sort(Comparator.comparing(file -> {
+            try {
+                return Files.getLastModifiedTime(file);
+            } catch (IOException e) {
+                return FileTime.fromMillis(0);
+            }
+        }));
+        List<String> evicted;
+        synchronized (index) {
+            for (Path file : segments) {
+                String name = file.getFileName().toString();
+                long size = Files.size(file);
+                index.put(name.substring(0, name.length() - ".mp3".length()), size);
+                totalBytes += size;
+            }
+            evicted = evictOverflow();
+        }
+        for (String evictedKey : evicted) {
+            Files.deleteIfExists(cacheDir.resolve(evictedKey + ".mp3"));
+        }
+        System.out.println("TTS segment cache holds " + index.size() + " segments (" + totalBytes + " bytes)");
+    }
+
+    private static Counter lookupCounter(MeterRegistry registry, String result) {
+        return Counter.builder("tts.cache.lookups")
+                .tag("result", result)
+                .description("TTS segment cache lookups by outcome")
+                .register(registry);
+    }
+}
@@ -0,0 +1,189 @@
+package com.server.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Owns the directory uploaded PDFs are spooled to while they are processed.
+ * Uploads are streamed to disk and hashed in the same pass, total spool size is capped,
+ * and every spooled file is deleted when its handle is closed or, failing that, by the sweeper.
+ */
+@Service
+public class UploadSpoolService {
+
+    // Kept out of temp/, which is served to the browser
+    @Value("${upload.spool.dir:${java.io.tmpdir}/lurnix-upload-spool}")
+    private String spoolDirectory;
+
+    @Value("${upload.spool.max-bytes:2147483648}") // 2 GB
+    private long maxSpoolBytes;
+
+    // Files older than this are assumed leaked and swept
+    @Value("${upload.spool.max-age-minutes:120}")
+    private long maxAgeMinutes;
+
+    private Path spoolDir;
+    private final AtomicLong spooledBytes = new AtomicLong();
+    private ScheduledExecutorService sweeper;
+
+    @PostConstruct
+    void init() throws IOException {
+        spoolDir = Paths.get(spoolDirectory).toAbsolutePath();
+        Files.createDirectories(spoolDir);
+        // Anything left from a previous run is unowned now
+        sweep(Duration.ZERO);
+
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "upload-spool-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(() -> sweep(Duration.ofMinutes(maxAgeMinutes)), 10, 10, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    /**
+     * Streams an upload into the spool directory, computing its SHA-256 on the way.
+     * @param file The multipart upload.
+     * @return A handle that deletes the spooled file when closed.
+     * @throws SpoolFullException If the upload would push the spool past its size cap.
+     */
+    public SpooledUpload spool(MultipartFile file) throws IOException {
+        long declaredSize = Math.max(0, file.getSize());
+        reserve(declaredSize);
+        long reserved = declaredSize;
+        Path target = spoolDir.resolve("upload_" + UUID.randomUUID() + ".pdf");
+        try {
+            MessageDigest digest = newSha256();
+            try (InputStream in = new DigestInputStream(file.getInputStream(), digest);
+                 OutputStream out = Files.newOutputStream(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                in.transferTo(out);
+            }
+            long actualSize = Files.size(target);
+            if (actualSize != reserved) {
+                // Settle the reservation against what actually landed on disk
+                spooledBytes.addAndGet(actualSize - reserved);
+                reserved = actualSize;
+            }
+            return new SpooledUpload(target, actualSize, HexFormat.of().formatHex(digest.digest()));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(target);
+            spooledBytes.addAndGet(-reserved);
+            throw e;
+        }
+    }
+
+    /**
+     * @return The bytes currently held in the spool directory by open uploads.
+     */
+    public long getSpooledBytes() {
+        return spooledBytes.get();
+    }
+
+    private void reserve(long bytes) throws SpoolFullException {
+        long current;
+        do {
+            current = spooledBytes.get();
+            if (current + bytes > maxSpoolBytes) {
+                throw new SpoolFullException("Upload spool is full (" + current + " of " + maxSpoolBytes + " bytes in use)");
+            }
+        } while (!spooledBytes.compareAndSet(current, current + bytes));
+    }
+
+    private void sweep(Duration maxAge) {
+        Instant cutoff = Instant.now().minus(maxAge);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(spoolDir, "upload_*")) {
+            for (Path file : files) {
+                FileTime modified = Files.getLastModifiedTime(file);
+                if (!modified.toInstant().isAfter(cutoff)) {
+                    // Not tracked by any handle any more, so the size counter is left alone
+                    Files.deleteIfExists(file);
+                    System.out.println("Swept stale spooled upload: " + file);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to sweep upload spool: " + e.getMessage());
+        }
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Thrown when the spool has no room for another upload.
+     */
+    public static class SpoolFullException extends IOException {
+        public SpoolFullException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A spooled upload. Closing it deletes the file and frees its share of the spool.
+     */
+    public final class SpooledUpload implements AutoCloseable {
+        private final Path path;
+        private final long size;
+        private final String sha256;
+        private boolean closed;
+
+        private SpooledUpload(Path path, long size, String sha256) {
+            this.path = path;
+            this.size = size;
+            this.sha256 = sha256;
+        }
+
+        public Path getPath() { return path; }
+        public long getSize() { return size; }
+        public String getSha256() { return sha256; }
+
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                System.err.println("Failed to delete spooled upload " + path + ": " + e.getMessage());
+            }
+            spooledBytes.addAndGet(-size);
+        }
+    }
+}
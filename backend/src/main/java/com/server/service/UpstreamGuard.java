@@ -0,0 +1,312 @@
+package com.server.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.ParseException;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resilience wrapper for one upstream API: a concurrency limit, a token-bucket rate limit, retries with jittered
+ * exponential backoff that honour Retry-After, and a circuit breaker that fails fast while the upstream is down.
+ * Callers signal a retryable response (429/5xx) by throwing {@link RetryableStatusException}; I/O errors are
+ * retried too. Anything else passes straight through.
+ */
+public class UpstreamGuard {
+
+    /**
+     * Limits for one upstream. Rates are requests per second.
+     */
+    public record Settings(int maxConcurrent, double ratePerSecond, int burst, long maxWaitMs,
+                           int maxAttempts, long baseBackoffMs, long maxBackoffMs,
+                           int failureThreshold, long openMs) {}
+
+    /**
+     * One attempt at the upstream call.
+     */
+    @FunctionalInterface
+    public interface Attempt<T> {
+        T run() throws IOException;
+    }
+
+    private enum CircuitState { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final Settings settings;
+    private final Semaphore concurrency;
+    private final Counter retries;
+    private final Counter rejections;
+    private final Counter failures;
+
+    // Token bucket
+    private double tokens;
+    private long lastRefillNanos = System.nanoTime();
+
+    // Circuit breaker
+    private CircuitState circuitState = CircuitState.CLOSED;
+    private int consecutiveFailures;
+    private long openUntilNanos;
+    private boolean trialInFlight;
+
+    public UpstreamGuard(String name, Settings settings, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.settings = settings;
+        this.concurrency = new Semaphore(settings.maxConcurrent(), true);
+        this.tokens = settings.burst();
+        this.retries = Counter.builder("upstream.retries").tag("upstream", name).register(meterRegistry);
+        this.rejections = Counter.builder("upstream.rejections").tag("upstream", name)
+                .description("Calls failed fast by the circuit breaker, rate limit or concurrency limit")
+                .register(meterRegistry);
+        this.failures = Counter.builder("upstream.failures").tag("upstream", name).register(meterRegistry);
+        Gauge.builder("upstream.circuit.open", this, guard -> guard.isOpen() ? 1 : 0).tag("upstream", name)
+                .register(meterRegistry);
+        Gauge.builder("upstream.inflight", concurrency, semaphore -> settings.maxConcurrent() - semaphore.availablePermits())
+                .tag("upstream", name).register(meterRegistry);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Runs the call within the limits, retrying retryable failures.
+     * @param attempt Performs one request.
+     * @return The attempt's result.
+     * @throws UpstreamUnavailableException If the call was failed fast or the retries ran out on retryable responses.
+     * @throws IOException The last I/O error, or a non-retryable error from the attempt.
+     */
+    public <T> T call(Attempt<T> attempt) throws IOException {
+        for (int attemptNumber = 1; ; attemptNumber++) {
+            boolean trial = admitThroughCircuit();
+            Duration retryAfter;
+            IOException failure;
+            try {
+                acquireRateToken();
+                acquireConcurrency();
+                try {
+                    T result = attempt.run();
+                    recordSuccess();
+                    return result;
+                } finally {
+                    concurrency.release();
+                }
+            } catch (UpstreamUnavailableException e) {
+                if (trial) {
+                    releaseTrial();
+                }
+                throw e;
+            } catch (RetryableStatusException e) {
+                retryAfter = e.getRetryAfter();
+                failure = e;
+            } catch (IOException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    // Our caller gave up; that says nothing about the upstream
+                    if (trial) {
+                        releaseTrial();
+                    }
+                    throw e;
+                }
+                retryAfter = null;
+                failure = e;
+            } catch (RuntimeException e) {
+                if (trial) {
+                    releaseTrial();
+                }
+                throw e;
+            }
+
+            failures.increment();
+            recordFailure();
+            if (attemptNumber >= settings.maxAttempts() || isOpen()) {
+                if (failure instanceof RetryableStatusException) {
+                    throw new UpstreamUnavailableException(name + " still failing after " + attemptNumber + " attempts: " + failure.getMessage());
+                }
+                throw failure;
+            }
+            retries.increment();
+            sleep(backoff(attemptNumber, retryAfter));
+        }
+    }
+
+    /**
+     * @return The delay before the given retry: full jitter over an exponential ceiling, but never before Retry-After.
+     */
+    long backoff(int attemptNumber, Duration retryAfter) {
+        long ceiling = Math.min(settings.maxBackoffMs(), settings.baseBackoffMs() << Math.min(20, attemptNumber - 1));
+        long delay = ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+        if (retryAfter != null) {
+            delay = Math.max(delay, retryAfter.toMillis());
+        }
+        return delay;
+    }
+
+    synchronized boolean isOpen() {
+        return circuitState == CircuitState.OPEN && System.nanoTime() < openUntilNanos;
+    }
+
+    /**
+     * @return Whether this call is the single trial let through a half-open circuit.
+     */
+    private synchronized boolean admitThroughCircuit() throws UpstreamUnavailableException {
+        if (circuitState == CircuitState.OPEN) {
+            if (System.nanoTime() < openUntilNanos) {
+                rejections.increment();
+                throw new UpstreamUnavailableException(name + " circuit is open");
+            }
+            circuitState = CircuitState.HALF_OPEN;
+        }
+        if (circuitState == CircuitState.HALF_OPEN) {
+            if (trialInFlight) {
+                rejections.increment();
+                throw new UpstreamUnavailableException(name + " circuit is half-open; trial call in flight");
+            }
+            trialInFlight = true;
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized void releaseTrial() {
+        trialInFlight = false;
+    }
+
+    private synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        circuitState = CircuitState.CLOSED;
+    }
+
+    private synchronized void recordFailure() {
+        trialInFlight = false;
+        consecutiveFailures++;
+        if (circuitState == CircuitState.HALF_OPEN || consecutiveFailures >= settings.failureThreshold()) {
+            if (circuitState != CircuitState.OPEN) {
+                System.err.println("Opening circuit for " + name + " after " + consecutiveFailures + " consecutive failures");
+            }
+            circuitState = CircuitState.OPEN;
+            openUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.openMs());
+        }
+    }
+
+    private void acquireRateToken() throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.maxWaitMs());
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                tokens = Math.min(settings.burst(), tokens + (now - lastRefillNanos) / 1e9 * settings.ratePerSecond());
+                lastRefillNanos = now;
+                if (tokens >= 1) {
+                    tokens -= 1;
+                    return;
+                }
+                waitNanos = (long) ((1 - tokens) / settings.ratePerSecond() * 1e9);
+                if (now + waitNanos > deadline) {
+                    rejections.increment();
+                    throw new UpstreamUnavailableException(name + " rate limit reached");
+                }
+            }
+            sleep(TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1);
+        }
+    }
+
+    private void acquireConcurrency() throws IOException {
+        try {
+            if (!concurrency.tryAcquire(settings.maxWaitMs(), TimeUnit.MILLISECONDS)) {
+                rejections.increment();
+                throw new UpstreamUnavailableException(name + " has too many calls in flight");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + name);
+        }
+    }
+
+    private void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off from " + name);
+        }
+    }
+
+    /**
+     * Parses a Retry-After header, given either in seconds or as an HTTP date.
+     * @return The delay, or null if the header is missing or malformed.
+     */
+    public static Duration parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                Duration until = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+                return until.isNegative() ? Duration.ZERO : until;
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @return Whether a response with this status should be retried.
+     */
+    public static boolean isRetryableStatus(int status) {
+        return status == 429 || status == 500 || status == 502 || status == 503 || status == 504;
+    }
+
+    /**
+     * Throws if the response has a retryable status, carrying its Retry-After delay and body, so the
+     * surrounding {@link #call} can retry it. Other responses are left for the caller to handle.
+     * @throws RetryableStatusException If the status is retryable.
+     */
+    public static void throwIfRetryable(ClassicHttpResponse response) throws IOException, ParseException {
+        if (isRetryableStatus(response.getCode())) {
+            Header retryAfter = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+            String body = response.getEntity() != null ? EntityUtils.toString(response.getEntity()) : null;
+            throw new RetryableStatusException(response.getCode(), parseRetryAfter(retryAfter != null ? retryAfter.getValue() : null), body);
+        }
+    }
+
+    /**
+     * Thrown by an attempt when the upstream answered with a retryable status.
+     */
+    public static class RetryableStatusException extends IOException {
+        private final int status;
+        private final Duration retryAfter;
+
+        public RetryableStatusException(int status, Duration retryAfter, String message) {
+            super("HTTP " + status + (message != null ? ": " + message : ""));
+            this.status = status;
+            this.retryAfter = retryAfter;
+        }
+
+        public int getStatus() { return status; }
+        public Duration getRetryAfter() { return retryAfter; }
+    }
+
+    /**
+     * Thrown without calling the upstream (circuit open, limits exhausted) or once retries run out.
+     */
+    public static class UpstreamUnavailableException extends IOException {
+        public UpstreamUnavailableException(String message) {
+            super(message);
+        }
+    }
+}
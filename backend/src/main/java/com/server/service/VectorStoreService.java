@@ -4,19 +4,27 @@ package com.server.service;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Service
 public class VectorStoreService {
 
     private final EmbeddingService embeddingService;
-    // In-memory representation of a vector store: Map of ID to (text, embedding)
-    private final Map<String, Map<String, Object>> collection = new HashMap<>();
+    // In-memory vector stores, one per session: each is a list of {document, embedding} chunks in chunk order.
+    // A session's list is built aside and swapped in whole, so readers never see one half-filled.
+    private final Map<String, List<Map<String, Object>>> collections = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
     @Autowired
     public VectorStoreService(EmbeddingService embeddingService) {
@@ -24,53 +32,91 @@ public class VectorStoreService {
     }
 
     /**
-     * Builds a PDF vector store by chunking text, generating embeddings, and storing them.
+     * Builds a session's PDF vector store by chunking text, generating embeddings, and storing them.
+     * @param sessionId The session the store is queried for.
      * @param pdfText The full text from the PDF.
      * @return A identifier for the collection (in this case, just a confirmation string).
      */
-    public String buildPdfVectorStore(String pdfText) {
-        collection.clear(); // Clear previous data for simplicity in this in-memory example
+    public String buildPdfVectorStore(String sessionId, String pdfText) {
         List<String> chunks = embeddingService.chunkText(pdfText, 500); // Same chunk size as Python
+        List<Map<String, Object>> collection = new ArrayList<>();
 
-        for (int i = 0; i < chunks.size(); i++) {
-            String chunk = chunks.get(i);
+        for (String chunk : chunks) {
             List<Double> embedding = embeddingService.getEmbedding(chunk);
-            String id = "chunk_" + i;
 
             Map<String, Object> entry = new HashMap<>();
             entry.put("document", chunk);
             entry.put("embedding", embedding);
-            collection.put(id, entry);
+            collection.add(Collections.unmodifiableMap(entry));
         }
+        collections.put(sessionId, List.copyOf(collection));
         return "PDF vector store built with " + chunks.size() + " chunks.";
     }
 
     /**
-     * Queries the vector store for the top K most relevant chunks based on a user question.
+     * Serialises a session's collection so it can be stored with the document and restored later.
+     * @param sessionId The session whose store to export.
+     * @return A JSON array of {document, embedding} chunks, in chunk order, or null if the session has no store.
+     */
+    public String exportCollection(String sessionId) {
+        List<Map<String, Object>> collection = collections.get(sessionId);
+        if (collection == null) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(collection);
+        } catch (JsonProcessingException e) {
+            System.err.println("Failed to export vector store: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Sets a session's collection to chunks previously exported by {@link #exportCollection(String)},
+     * without recomputing any embeddings.
+     * @param sessionId The session the store is queried for.
+     * @param json The exported chunks.
+     * @return A confirmation string, or an error message if the JSON can't be read.
+     */
+    public String restoreCollection(String sessionId, String json) {
+        List<Map<String, Object>> chunks;
+        try {
+            chunks = objectMapper.readValue(json, new TypeReference<List<Map<String, Object>>>() {});
+        } catch (JsonProcessingException e) {
+            return "Error: Failed to restore vector store: " + e.getMessage();
+        }
+        collections.put(sessionId, List.copyOf(chunks));
+        return "PDF vector store restored with " + chunks.size() + " chunks.";
+    }
+
+    /**
+     * Queries a session's vector store for the top K most relevant chunks based on a user question.
      * This is a simplified similarity search using Euclidean distance for demonstration.
+     * @param sessionId The session whose document is asked about.
      * @param userQuestion The user's question.
      * @param topK The number of top chunks to retrieve.
      * @return A list of retrieved text chunks.
      */
-    public List<String> queryVectorStore(String userQuestion, int topK) {
-        if (collection.isEmpty()) {
+    public List<String> queryVectorStore(String sessionId, String userQuestion, int topK) {
+        List<Map<String, Object>> collection = collections.get(sessionId);
+        if (collection == null || collection.isEmpty()) {
             return new ArrayList<>(); // Return empty if no data is stored
         }
 
         List<Double> queryEmbedding = embeddingService.getEmbedding(userQuestion);
 
         // Calculate similarity (using Euclidean distance for simplicity, lower is better)
-        List<Map.Entry<String, Map<String, Object>>> sortedChunks = collection.entrySet().stream()
+        List<Map<String, Object>> sortedChunks = collection.stream()
                 .sorted(Comparator.comparingDouble(entry -> {
                     @SuppressWarnings("unchecked")
-                    List<Double> chunkEmbedding = (List<Double>) entry.getValue().get("embedding");
+                    List<Double> chunkEmbedding = (List<Double>) entry.get("embedding");
                     return euclideanDistance(queryEmbedding, chunkEmbedding);
                 }))
                 .collect(Collectors.toList());
 
         List<String> retrievedChunks = new ArrayList<>();
         for (int i = 0; i < Math.min(topK, sortedChunks.size()); i++) {
-            retrievedChunks.add((String) sortedChunks.get(i).getValue().get("document"));
+            retrievedChunks.add((String) sortedChunks.get(i).get("document"));
         }
         return retrievedChunks;
     }
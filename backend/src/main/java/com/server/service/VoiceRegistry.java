@@ -0,0 +1,166 @@
+package com.server.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The account's ElevenLabs voice catalogue, loaded once and refreshed in the background, plus the configured
+ * mapping from script speakers to voice names. Lookups read an immutable snapshot and never block on a fetch
+ * once the catalogue has been loaded.
+ */
+@Service
+public class VoiceRegistry {
+
+    @Value("${elevenlabs.api.key}")
+    private String elevenLabsApiKey;
+
+    @Value("${elevenlabs.api.base-url:https://api.elevenlabs.io}")
+    private String elevenLabsBaseUrl;
+
+    @Value("${elevenlabs.voices.refresh-minutes:60}")
+    private long refreshMinutes;
+
+    // "speaker:voice name,..."; speakers not listed get the default voice
+    @Value("${elevenlabs.voices.speakers:Sarah:Sarah,Dr. Adam:Brian}")
+    private String speakerVoices;
+
+    @Value("${elevenlabs.voices.default:Sarah}")
+    private String defaultVoice;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CloseableHttpClient httpClient;
+    private final UpstreamGuard elevenLabsGuard;
+    private Map<String, String> voiceBySpeaker;
+    private List<String> speakers;
+    // Voice name to id; replaced wholesale on refresh
+    private volatile Map<String, String> catalogue = Map.of();
+    private ScheduledExecutorService refresher;
+
+    @Autowired
+    public VoiceRegistry(CloseableHttpClient httpClient, @Qualifier("elevenLabsGuard") UpstreamGuard elevenLabsGuard) {
+        this.httpClient = httpClient;
+        this.elevenLabsGuard = elevenLabsGuard;
+    }
+
+    @PostConstruct
+    void init() {
+        Map<String, String> mapping = new LinkedHashMap<>();
+        List<String> names = new ArrayList<>();
+        for (String entry : speakerVoices.split(",")) {
+            int colon = entry.lastIndexOf(':');
+            if (colon > 0) {
+                String speaker = entry.substring(0, colon).trim();
+                mapping.put(speaker.toLowerCase(), entry.substring(colon + 1).trim());
+                names.add(speaker);
+            }
+        }
+        voiceBySpeaker = Map.copyOf(mapping);
+        speakers = List.copyOf(names);
+
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "elevenlabs-voice-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // The first load runs straight away in the background, so startup doesn't wait on ElevenLabs
+        refresher.scheduleWithFixedDelay(this::refreshQuietly, 0, refreshMinutes, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    /**
+     * Resolves a script speaker to a voice id, falling back to the default voice.
+     * @param speaker The speaker name as it appears in the script.
+     * @return The voice id, or null if neither the mapped nor the default voice exists on the account.
+     * @throws IOException If the catalogue has never been loaded and loading it now fails.
+     */
+    public String voiceIdFor(String speaker) throws IOException {
+        Map<String, String> voices = catalogue;
+        if (voices.isEmpty()) {
+            voices = loadIfEmpty();
+        }
+        String voiceName = voiceBySpeaker.getOrDefault(speaker.toLowerCase(), defaultVoice);
+        String voiceId = voices.get(voiceName);
+        if (voiceId == null) {
+            System.err.println("Voice ID not found for: " + voiceName + ". Falling back to " + defaultVoice + ".");
+            voiceId = voices.get(defaultVoice);
+        }
+        return voiceId;
+    }
+
+    /**
+     * @return The configured script speakers, in configuration order; scripts are cut into turns at these names.
+     */
+    public List<String> getSpeakers() {
+        return speakers;
+    }
+
+    /**
+     * @return The current catalogue, voice name to id.
+     */
+    public Map<String, String> getCatalogue() {
+        return catalogue;
+    }
+
+    private synchronized Map<String, String> loadIfEmpty() throws IOException {
+        // Whoever waited on the lock behind the first loader finds it filled
+        if (catalogue.isEmpty()) {
+            refresh();
+        }
+        return catalogue;
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (IOException e) {
+            // Keep serving the previous catalogue until the next attempt
+            System.err.println("Failed to refresh ElevenLabs voices: " + e.getMessage());
+        }
+    }
+
+    private void refresh() throws IOException {
+        HttpGet httpGet = new HttpGet(elevenLabsBaseUrl + "/v1/voices");
+        httpGet.addHeader("xi-api-key", elevenLabsApiKey);
+
+        Map<String, String> voices = elevenLabsGuard.call(() -> httpClient.execute(httpGet, response -> {
+            UpstreamGuard.throwIfRetryable(response);
+            if (response.getCode() != 200) {
+                throw new IOException("Failed to fetch voices. Status code: " + response.getCode());
+            }
+            Map<String, String> loaded = new HashMap<>();
+            try (InputStream body = response.getEntity().getContent()) {
+                for (JsonNode voiceNode : objectMapper.readTree(body).path("voices")) {
+                    loaded.put(voiceNode.path("name").asText(), voiceNode.path("voice_id").asText());
+                }
+            }
+            return loaded;
+        }));
+        catalogue = Map.copyOf(voices);
+        System.out.println("Loaded " + voices.size() + " ElevenLabs voices");
+    }
+}
@@ -1,18 +1,23 @@
 package com.server.service;
 
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.HttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.jackson2.JacksonFactory;
 import com.google.api.services.youtube.YouTube;
 import com.google.api.services.youtube.model.SearchListResponse;
 import com.google.api.services.youtube.model.SearchResult;
 import com.google.api.services.youtube.model.Thumbnail;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.server.dto.YouTubeSuggestions;
 import com.server.model.YouTubeVideo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -26,13 +31,20 @@ public class YouTubeService {
     private static final JsonFactory JSON_FACTORY = JacksonFactory.getDefaultInstance();
 
     private final YouTube youtube;
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
-    public YouTubeService() throws GeneralSecurityException, IOException {
+    private final UpstreamGuard youtubeGuard;
+
+    @Autowired
+    public YouTubeService(HttpTransport youtubeHttpTransport, @Qualifier("youtubeGuard") UpstreamGuard youtubeGuard,
+                          @Value("${youtube.api.root-url:https://www.googleapis.com/}") String rootUrl) {
+        // Pooled transport from HttpClientConfig instead of a fresh connection per search
         youtube = new YouTube.Builder(
-                GoogleNetHttpTransport.newTrustedTransport(),
+                youtubeHttpTransport,
                 JSON_FACTORY,
                 request -> {}
-        ).setApplicationName(APPLICATION_NAME).build();
+        ).setApplicationName(APPLICATION_NAME).setRootUrl(rootUrl).build();
+        this.youtubeGuard = youtubeGuard;
     }
 
     public List<YouTubeVideo> searchTopRelevantVideos(String query, long maxResults) {
@@ -50,7 +62,17 @@ public class YouTubeService {
 
             search.setFields("items(id/videoId,snippet/title,snippet/description,snippet/thumbnails/high/url,snippet/thumbnails/medium/url,snippet/thumbnails/default/url)");
 
-            SearchListResponse searchResponse = search.execute();
+            SearchListResponse searchResponse = youtubeGuard.call(() -> {
+                try {
+                    return search.execute();
+                } catch (HttpResponseException e) {
+                    if (UpstreamGuard.isRetryableStatus(e.getStatusCode())) {
+                        throw new UpstreamGuard.RetryableStatusException(e.getStatusCode(),
+                                UpstreamGuard.parseRetryAfter(e.getHeaders().getRetryAfter()), e.getStatusMessage());
+                    }
+                    throw e;
+                }
+            });
             List<SearchResult> searchResults = searchResponse.getItems();
 
             if (searchResults != null) {
@@ -80,4 +102,35 @@ public class YouTubeService {
 
         return youtubeVideos;
     }
+
+    /**
+     * Serialises a search subject and its results for the youtube column.
+     * @param subject The search subject.
+     * @param videos The videos found for it.
+     * @return The JSON to store, or null if it can't be written.
+     */
+    public String toStoredJson(String subject, List<YouTubeVideo> videos) {
+        try {
+            return objectMapper.writeValueAsString(new YouTubeSuggestions(subject, videos));
+        } catch (JsonProcessingException e) {
+            System.err.println("Failed to serialise YouTube suggestions: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reads a youtube column written by {@link #toStoredJson(String, List)}.
+     * @param stored The stored value.
+     * @return The stored suggestions, or null if the value is missing or in the old plain-text format.
+     */
+    public YouTubeSuggestions fromStoredJson(String stored) {
+        if (stored == null || !stored.startsWith("{")) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(stored, YouTubeSuggestions.class);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
 }
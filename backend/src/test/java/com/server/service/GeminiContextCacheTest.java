@@ -0,0 +1,144 @@
+package com.server.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Exercises GeminiContextCache against a local stub of the cachedContents endpoint.
+ */
+class GeminiContextCacheTest {
+
+    private static final String DOCUMENT = "x".repeat(40_000);
+
+    private HttpServer server;
+    private CloseableHttpClient client;
+    private GeminiContextCache cache;
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private volatile int status = 200;
+    private volatile Instant expireTime = Instant.now().plusSeconds(3600);
+
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath());
+            exchange.getRequestBody().readAllBytes();
+            byte[] body = ("{\"name\":\"cachedContents/doc1\",\"expireTime\":\"" + expireTime + "\"}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        client = HttpClients.createDefault();
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        UpstreamGuard guard = new UpstreamGuard("gemini", new UpstreamGuard.Settings(4, 100, 100, 1000, 1, 10, 100, 100, 1000), registry);
+        cache = new GeminiContextCache(client, guard, registry);
+        ReflectionTestUtils.setField(cache, "geminiApiKey", "test");
+        ReflectionTestUtils.setField(cache, "geminiBaseUrl", "http://127.0.0.1:" + server.getAddress().getPort());
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "ttlMinutes", 60L);
+        ReflectionTestUtils.setField(cache, "renewMarginMinutes", 5L);
+        ReflectionTestUtils.setField(cache, "minTokens", 4096);
+        ReflectionTestUtils.setField(cache, "failureBackoffMinutes", 10L);
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    void createsOnceThenReuses() {
+        assertEquals("cachedContents/doc1", cache.handleFor("gemini-2.0-flash", DOCUMENT));
+        assertEquals("cachedContents/doc1", cache.handleFor("gemini-2.0-flash", DOCUMENT));
+        assertEquals(List.of("POST /v1beta/cachedContents"), requests);
+    }
+
+    @Test
+    void renewsEntriesCloseToExpiry() {
+        expireTime = Instant.now().plusSeconds(60);
+        cache.handleFor("gemini-2.0-flash", DOCUMENT);
+        expireTime = Instant.now().plusSeconds(3600);
+        assertEquals("cachedContents/doc1", cache.handleFor("gemini-2.0-flash", DOCUMENT));
+        assertEquals(List.of("POST /v1beta/cachedContents", "PATCH /v1beta/cachedContents/doc1"), requests);
+    }
+
+    @Test
+    void recreatesAfterInvalidation() {
+        cache.handleFor("gemini-2.0-flash", DOCUMENT);
+        cache.invalidate("cachedContents/doc1");
+        cache.handleFor("gemini-2.0-flash", DOCUMENT);
+        assertEquals(List.of("POST /v1beta/cachedContents", "POST /v1beta/cachedContents"), requests);
+    }
+
+    @Test
+    void skipsSmallDocuments() {
+        assertNull(cache.handleFor("gemini-2.0-flash", "short text"));
+        assertEquals(List.of(), requests);
+    }
+
+    @Test
+    void fallsBackAndBacksOffWhenCreateFails() {
+        status = 400;
+        assertNull(cache.handleFor("gemini-2.0-flash", DOCUMENT));
+        status = 200;
+        assertNull(cache.handleFor("gemini-2.0-flash", DOCUMENT));
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    void sweepDropsExpiredHandlesAndTheirLocks() {
+        expireTime = Instant.now().minusSeconds(1);
+        cache.handleFor("gemini-2.0-flash", DOCUMENT);
+        cache.sweepExpired();
+        assertTrue(field("handles").isEmpty());
+        assertTrue(field("keyLocks").isEmpty());
+    }
+
+    @Test
+    void sweepKeepsLiveHandles() {
+        cache.handleFor("gemini-2.0-flash", DOCUMENT);
+        cache.sweepExpired();
+        assertEquals(1, field("handles").size());
+        assertEquals("cachedContents/doc1", cache.handleFor("gemini-2.0-flash", DOCUMENT));
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    void sweepDropsElapsedBackoffs() {
+        ReflectionTestUtils.setField(cache, "failureBackoffMinutes", 0L);
+        status = 400;
+        assertNull(cache.handleFor("gemini-2.0-flash", DOCUMENT));
+        cache.sweepExpired();
+        assertTrue(field("failedUntil").isEmpty());
+        assertTrue(field("keyLocks").isEmpty());
+    }
+
+    private Map<?, ?> field(String name) {
+        return (Map<?, ?>) ReflectionTestUtils.getField(cache, name);
+    }
+}
@@ -0,0 +1,171 @@
+package com.server.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Exercises Mp3Concatenator on synthetic Layer III frames wrapped in tags and VBR header frames.
+ */
+class Mp3ConcatenatorTest {
+
+    // MPEG 1 Layer III, 128 kbps, 44.1 kHz: 144 * 128000 / 44100 = 417 bytes per frame
+    private static final int STEREO_44K = 0xFFFB9000;
+    private static final int MONO_44K = 0xFFFB90C0;
+    private static final int STEREO_48K = 0xFFFB9400; // 384 bytes per frame
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void joinsFramesWithoutTagsOrVbrHeaders() throws IOException {
+        byte[] first = concat(frame(STEREO_44K, 1), frame(STEREO_44K, 2));
+        byte[] second = concat(frame(STEREO_44K, 3), frame(STEREO_44K, 4), frame(STEREO_44K, 5));
+        Path a = write("a.mp3", concat(id3v2(20, false), xingFrame(STEREO_44K, "Xing"), first, id3v1()));
+        Path b = write("b.mp3", concat(vbriFrame(STEREO_44K), second));
+        Path output = dir.resolve("out.mp3");
+
+        assertTrue(Mp3Concatenator.concatenate(List.of(a, b), output));
+        assertArrayEquals(concat(first, second), Files.readAllBytes(output));
+    }
+
+    @Test
+    void skipsInfoHeaderOfMonoFiles() throws IOException {
+        byte[] audio = concat(frame(MONO_44K, 1), frame(MONO_44K, 2));
+        Path file = write("mono.mp3", concat(xingFrame(MONO_44K, "Info"), audio));
+
+        assertArrayEquals(audio, Mp3Concatenator.readAudio(file));
+    }
+
+    @Test
+    void skipsId3v2TagWithFooter() throws IOException {
+        byte[] audio = concat(frame(STEREO_44K, 1), frame(STEREO_44K, 2));
+        Path file = write("footer.mp3", concat(id3v2(30, true), audio));
+
+        Mp3Concatenator.AudioRange range = locate(file);
+        assertEquals(10 + 30 + 10, range.start());
+        assertEquals(Files.size(file), range.end());
+        assertEquals(new Mp3Concatenator.Format(3, 44100, false), range.format());
+    }
+
+    @Test
+    void ignoresFalseSyncBeforeTheFirstFrame() throws IOException {
+        // A header-like word that isn't followed by another frame header where its length says it should be
+        byte[] junk = concat(header(STEREO_44K), new byte[10]);
+        byte[] audio = concat(frame(STEREO_44K, 1), frame(STEREO_44K, 2));
+        Path file = write("junk.mp3", concat(junk, audio));
+
+        assertEquals(junk.length, locate(file).start());
+    }
+
+    @Test
+    void refusesFilesInDifferentFormats() throws IOException {
+        Path stereo = write("stereo.mp3", concat(frame(STEREO_44K, 1), frame(STEREO_44K, 2)));
+        Path mono = write("mono.mp3", concat(frame(MONO_44K, 1), frame(MONO_44K, 2)));
+        Path otherRate = write("48k.mp3", concat(frame(STEREO_48K, 1), frame(STEREO_48K, 2)));
+        Path output = dir.resolve("out.mp3");
+
+        assertFalse(Mp3Concatenator.concatenate(List.of(stereo, mono), output));
+        assertFalse(Mp3Concatenator.concatenate(List.of(stereo, otherRate), output));
+        assertFalse(Files.exists(output));
+    }
+
+    @Test
+    void refusesFilesWithoutLayer3Frames() throws IOException {
+        byte[] noise = new byte[2048];
+        Arrays.fill(noise, (byte) 0x42);
+        Path file = write("noise.mp3", noise);
+
+        assertNull(locate(file));
+        assertFalse(Mp3Concatenator.concatenate(List.of(file), dir.resolve("out.mp3")));
+        assertArrayEquals(noise, Mp3Concatenator.readAudio(file));
+    }
+
+    private Mp3Concatenator.AudioRange locate(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return Mp3Concatenator.locateAudio(channel);
+        }
+    }
+
+    private Path write(String name, byte[] bytes) throws IOException {
+        return Files.write(dir.resolve(name), bytes);
+    }
+
+    private static byte[] frame(int header, int marker) {
+        byte[] frame = new byte[frameLength(header)];
+        Arrays.fill(frame, (byte) marker);
+        System.arraycopy(header(header), 0, frame, 0, 4);
+        return frame;
+    }
+
+    /** A header frame with a Xing or Info tag after the side information. */
+    private static byte[] xingFrame(int header, String tag) {
+        byte[] frame = new byte[frameLength(header)];
+        System.arraycopy(header(header), 0, frame, 0, 4);
+        int sideInfo = (header & 0xC0) == 0xC0 ? 17 : 32;
+        System.arraycopy(tag.getBytes(StandardCharsets.US_ASCII), 0, frame, 4 + sideInfo, 4);
+        return frame;
+    }
+
+    /** A header frame with a VBRI tag, which always sits 32 bytes after the frame header. */
+    private static byte[] vbriFrame(int header) {
+        byte[] frame = new byte[frameLength(header)];
+        System.arraycopy(header(header), 0, frame, 0, 4);
+        System.arraycopy("VBRI".getBytes(StandardCharsets.US_ASCII), 0, frame, 36, 4);
+        return frame;
+    }
+
+    private static byte[] id3v2(int size, boolean footer) {
+        byte[] tag = new byte[10 + size + (footer ? 10 : 0)];
+        tag[0] = 'I';
+        tag[1] = 'D';
+        tag[2] = '3';
+        tag[3] = 4;
+        tag[5] = (byte) (footer ? 0x10 : 0);
+        // Syncsafe size: 7 bits per byte
+        tag[6] = (byte) ((size >> 21) & 0x7F);
+        tag[7] = (byte) ((size >> 14) & 0x7F);
+        tag[8] = (byte) ((size >> 7) & 0x7F);
+        tag[9] = (byte) (size & 0x7F);
+        return tag;
+    }
+
+    private static byte[] id3v1() {
+        byte[] tag = new byte[128];
+        tag[0] = 'T';
+        tag[1] = 'A';
+        tag[2] = 'G';
+        return tag;
+    }
+
+    private static byte[] header(int header) {
+        return new byte[]{(byte) (header >>> 24), (byte) (header >>> 16), (byte) (header >>> 8), (byte) header};
+    }
+
+    private static int frameLength(int header) {
+        return ((header >>> 10) & 0x03) == 1 ? 384 : 417;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+}
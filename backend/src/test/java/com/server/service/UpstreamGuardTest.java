@@ -0,0 +1,143 @@
+package com.server.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Exercises UpstreamGuard against a local stub server that injects errors and latency.
+ */
+class UpstreamGuardTest {
+
+    private HttpServer server;
+    private CloseableHttpClient client;
+    private final AtomicInteger hits = new AtomicInteger();
+    private volatile IntFunction<StubResponse> responder;
+
+    private record StubResponse(int status, String retryAfter, long delayMs) {}
+
+    @BeforeEach
+    void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            StubResponse response = responder.apply(hits.incrementAndGet());
+            try {
+                Thread.sleep(response.delayMs());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (response.retryAfter() != null) {
+                exchange.getResponseHeaders().add("Retry-After", response.retryAfter());
+            }
+            byte[] body = ("status " + response.status()).getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(response.status(), body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        client = HttpClients.createDefault();
+    }
+
+    @AfterEach
+    void stopStub() throws IOException {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    void retriesRetryableStatusesUntilSuccess() throws IOException {
+        responder = hit -> hit < 3 ? new StubResponse(503, "0", 0) : new StubResponse(200, null, 0);
+        UpstreamGuard guard = guard(4, 10, 20, 1000, 4, 5);
+
+        assertEquals("status 200", call(guard));
+        assertEquals(3, hits.get());
+    }
+
+    @Test
+    void honoursRetryAfter() throws IOException {
+        responder = hit -> hit == 1 ? new StubResponse(429, "1", 0) : new StubResponse(200, null, 0);
+        UpstreamGuard guard = guard(4, 10, 20, 1000, 2, 5);
+
+        long start = System.nanoTime();
+        assertEquals("status 200", call(guard));
+        assertTrue((System.nanoTime() - start) / 1_000_000 >= 1000, "retried before Retry-After elapsed");
+    }
+
+    @Test
+    void opensCircuitAndFailsFast() {
+        responder = hit -> new StubResponse(500, null, 0);
+        UpstreamGuard guard = guard(4, 10, 20, 1000, 1, 2);
+
+        assertThrows(UpstreamGuard.UpstreamUnavailableException.class, () -> call(guard));
+        assertThrows(UpstreamGuard.UpstreamUnavailableException.class, () -> call(guard));
+        assertThrows(UpstreamGuard.UpstreamUnavailableException.class, () -> call(guard));
+        assertEquals(2, hits.get(), "open circuit should not reach the upstream");
+    }
+
+    @Test
+    void limitsConcurrentCalls() throws Exception {
+        responder = hit -> new StubResponse(200, null, 500);
+        UpstreamGuard guard = guard(1, 10, 20, 50, 1, 5);
+
+        CompletableFuture<String> slow = CompletableFuture.supplyAsync(() -> {
+            try {
+                return call(guard);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(100);
+        assertThrows(UpstreamGuard.UpstreamUnavailableException.class, () -> call(guard));
+        assertEquals("status 200", slow.get());
+    }
+
+    @Test
+    void rateLimitsBeyondBurst() throws IOException {
+        responder = hit -> new StubResponse(200, null, 0);
+        UpstreamGuard guard = guard(4, 1, 1, 0, 1, 5);
+
+        assertEquals("status 200", call(guard));
+        assertThrows(UpstreamGuard.UpstreamUnavailableException.class, () -> call(guard));
+        assertEquals(1, hits.get());
+    }
+
+    private UpstreamGuard guard(int maxConcurrent, double ratePerSecond, int burst, long maxWaitMs, int maxAttempts, int failureThreshold) {
+        return new UpstreamGuard("stub", new UpstreamGuard.Settings(maxConcurrent, ratePerSecond, burst, maxWaitMs,
+                maxAttempts, 10, 100, failureThreshold, 60000), new SimpleMeterRegistry());
+    }
+
+    private String call(UpstreamGuard guard) throws IOException {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        return guard.call(() -> client.execute(new HttpGet(url), response -> {
+            if (UpstreamGuard.isRetryableStatus(response.getCode())) {
+                String retryAfter = response.getFirstHeader("Retry-After") != null ? response.getFirstHeader("Retry-After").getValue() : null;
+                EntityUtils.consume(response.getEntity());
+                throw new UpstreamGuard.RetryableStatusException(response.getCode(), UpstreamGuard.parseRetryAfter(retryAfter), null);
+            }
+            return EntityUtils.toString(response.getEntity());
+        }));
+    }
+}
@@ -65,27 +65,55 @@ export const ChatBot = ({ sessionId }: ChatBotProps) => {
 
     try {
       const token = localStorage.getItem('token');
-      const response = await fetch(`http://localhost:8080/api/pdf/chat/${sessionId}`, {
+      const response = await fetch(`http://localhost:8080/api/pdf/chat/${sessionId}/stream`, {
         method: 'POST',
         headers: {
           'Content-Type': 'application/json',
+          'Accept': 'text/event-stream',
           'Authorization': token || ''
         },
         body: JSON.stringify({ role: 'user', content: userMessage.content })
       });
 
-      if (!response.ok) {
+      if (!response.ok || !response.body) {
         const errorText = await response.text();
         throw new Error(errorText || `Error: ${response.status}`);
       }
 
-      const data = await response.json();
-      setMessages(prev => [...prev, {
-        id: (Date.now() + 2).toString(),
-        content: data.content || 'No response from backend.',
-        sender: 'bot',
-        timestamp: new Date(),
-      }]);
+      // The answer arrives as server-sent events; show text as soon as the first token lands
+      const botId = (Date.now() + 2).toString();
+      setMessages(prev => [...prev, { id: botId, content: '', sender: 'bot', timestamp: new Date() }]);
+      const appendToBot = (update: (content: string) => string) =>
+        setMessages(prev => prev.map(m => m.id === botId ? { ...m, content: update(m.content) } : m));
+
+      const reader = response.body.getReader();
+      const decoder = new TextDecoder();
+      let buffer = '';
+      while (true) {
+        const { done, value } = await reader.read();
+        if (done) break;
+        buffer += decoder.decode(value, { stream: true });
+        let boundary;
+        while ((boundary = buffer.indexOf('\n\n')) >= 0) {
+          const rawEvent = buffer.slice(0, boundary);
+          buffer = buffer.slice(boundary + 2);
+          let eventName = 'message';
+          const dataLines: string[] = [];
+          for (const line of rawEvent.split('\n')) {
+            if (line.startsWith('event:')) eventName = line.slice(6).trim();
+            else if (line.startsWith('data:')) dataLines.push(line.slice(5));
+          }
+          const data = dataLines.join('\n');
+          if (eventName === 'token') {
+            setIsTyping(false);
+            appendToBot(content => content + JSON.parse(data).text);
+          } else if (eventName === 'done') {
+            appendToBot(() => JSON.parse(data).content || 'No response from backend.');
+          } else if (eventName === 'error') {
+            throw new Error(data);
+          }
+        }
+      }
     } catch (err: any) {
       setError(err.message);
       setMessages(prev => [...prev, {
@@ -119,12 +119,13 @@ export const FileUpload = ({ onBack, onSessionId }: FileUploadProps) => {
       const data = await response.json();
       setSessionId(data.sessionId);
       if (onSessionId) onSessionId(data.sessionId);
-      setUploadProgress(100);
-      setAutoSummary(data.summary);
-      setAutoVideoSuggestions(data.videoSuggestions);
-      setAutoPodcastScript(data.podcastScript);
       setSummary(null); setVideoSuggestions(null); setPodcastScript(null); // clear manual fetches
       toast({ title: 'Upload successful!', description: data.message });
+      // Content is generated in the background; poll the job and show each result as it lands
+      const job = await pollIngestionJob(data.jobId, token);
+      if (job.state === 'FAILED') {
+        throw new Error(job.error || 'Processing failed');
+      }
     } catch (err: any) {
       setUploadError(err.message);
       toast({ title: 'Upload failed', description: err.message, variant: 'destructive' });
@@ -134,6 +135,24 @@ export const FileUpload = ({ onBack, onSessionId }: FileUploadProps) => {
     }
   };
 
+  const pollIngestionJob = async (jobId: string, token: string | null) => {
+    while (true) {
+      const response = await fetch(`http://localhost:8080/api/pdf/jobs/${jobId}`, {
+        headers: { 'Authorization': token || '' }
+      });
+      if (!response.ok) throw new Error(await response.text());
+      const job = await response.json();
+      const stages = Object.values(job.stages || {}) as any[];
+      const finished = stages.filter((stage) => stage.state !== 'PENDING' && stage.state !== 'RUNNING').length;
+      setUploadProgress(stages.length ? Math.round((finished / stages.length) * 100) : 0);
+      if (job.results?.summary) setAutoSummary(job.results.summary);
+      if (job.results?.podcastScript) setAutoPodcastScript(job.results.podcastScript);
+      if (job.results?.videoSuggestions) setAutoVideoSuggestions(job.results.videoSuggestions);
+      if (job.state === 'COMPLETED' || job.state === 'FAILED') return job;
+      await new Promise((resolve) => setTimeout(resolve, 2000));
+    }
+  };
+
   const getFileIcon = (fileName: string) => {
     if (fileName.endsWith('.pdf')) return <FileText className="w-6 h-6 text-red-500" />;
     if (fileName.endsWith('.ppt') || fileName.endsWith('.pptx')) return <FileImage className="w-6 h-6 text-orange-500" />;